@@ -0,0 +1,43 @@
+package com.bitwave.projectflux;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Console throughput: several producer threads appending lines while one reader drains the ring,
+// as the FX thread does once per pulse. Reported per appended line.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleBenchmark {
+    private static final String LINE = "[INFO] Compiling 42 source files to /project/target/classes";
+
+    private final ConsoleBuffer buffer = new ConsoleBuffer(ConsoleView.DEFAULT_MAX_LINES);
+
+    @Benchmark
+    @Group("console")
+    @GroupThreads(4)
+    public void append() {
+        buffer.add(LINE, false);
+    }
+
+    @Benchmark
+    @Group("console")
+    @GroupThreads(1)
+    public int drain() {
+        return buffer.drain().size();
+    }
+}
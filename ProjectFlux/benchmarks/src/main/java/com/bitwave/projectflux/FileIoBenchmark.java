@@ -0,0 +1,123 @@
+package com.bitwave.projectflux;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// File open/save paths of the editors
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class FileIoBenchmark {
+    @Param({"64KB", "1MB", "16MB"})
+    public String size;
+
+    private Path directory;
+    private Path source;
+    private Path target;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FxToolkit.start();
+        directory = Files.createTempDirectory("flux-io");
+        text = Sources.javaSource(Sources.parseSize(size));
+        source = directory.resolve("Source.java");
+        target = directory.resolve("Target.java");
+        Files.writeString(source, text);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Sources.deleteTree(directory);
+    }
+
+    // ProjectFluxv1/v2/v3 open
+    @Benchmark
+    public String readString() throws IOException {
+        return Files.readString(source);
+    }
+
+    // The original ProjectFluxv5 open: the file read on the FX thread, one appendText per line,
+    // each re-lexed incrementally. The editor's first full pass, over no text, lands before the
+    // appends, or they would only push that pass back.
+    @Benchmark
+    public int codeEditorAppendPerLine() throws Exception {
+        CodeEditor editor = FxToolkit.call(CodeEditor::new);
+        awaitHighlighting(editor);
+        FxToolkit.call(() -> {
+            try (BufferedReader reader = new BufferedReader(new FileReader(source.toFile()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    editor.appendText(line + "\n");
+                }
+            }
+            return null;
+        });
+        awaitHighlighting(editor);
+        return FxToolkit.call(editor::getLength);
+    }
+
+    // ProjectFluxv5 open through FileLoadTask: chunked decode, batched inserts on the FX thread,
+    // then one full highlighting pass once the text is in
+    @Benchmark
+    public int codeEditorStreamingLoad() throws Exception {
+        CodeEditor editor = FxToolkit.call(() -> {
+            CodeEditor created = new CodeEditor();
+            created.setHighlightingSuspended(true);
+            return created;
+        });
+        FileLoadTask task = new FileLoadTask(source, editor::appendText);
+        task.run();
+        task.get();
+        FxToolkit.call(() -> {
+            editor.setHighlightingSuspended(false);
+            return null;
+        });
+        awaitHighlighting(editor);
+        return FxToolkit.call(editor::getLength);
+    }
+
+    // Until the editor has no full pass scheduled or running, so its styles match the text
+    private static void awaitHighlighting(CodeEditor editor) throws Exception {
+        while (FxToolkit.call(editor::isHighlightingPending)) {
+            Thread.sleep(1);
+        }
+    }
+
+    // ProjectFluxv1/v3 save
+    @Benchmark
+    public Path writeString() throws IOException {
+        return Files.writeString(target, text);
+    }
+
+    // ProjectFluxv5 save
+    @Benchmark
+    public void bufferedWriter() throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(target.toFile()))) {
+            writer.write(text);
+        }
+    }
+}
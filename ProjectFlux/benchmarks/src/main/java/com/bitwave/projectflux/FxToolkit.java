@@ -0,0 +1,43 @@
+package com.bitwave.projectflux;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Some benchmarks build JavaFX controls (TreeItem graphics, CodeEditor), which needs the
+// toolkit to be running. This requires a display, so run those benchmarks on a desktop.
+final class FxToolkit {
+    private static boolean started;
+
+    private FxToolkit() {
+    }
+
+    static synchronized void start() {
+        if (!started) {
+            try {
+                Platform.startup(() -> {
+                });
+            } catch (IllegalStateException e) {
+                // Already running in this JVM
+            }
+            started = true;
+        }
+    }
+
+    // Runs task on the FX thread and waits for its result. Controls may only be built and changed
+    // there, as their listeners, highlighting included, run there too.
+    static <T> T call(Callable<T> task) throws Exception {
+        FutureTask<T> future = new FutureTask<>(task);
+        Platform.runLater(future);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.bitwave.projectflux;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Highlighting throughput over generated Java sources. The legacy* methods keep the
+// original regex highlighters as a baseline to compare the lexer-based ones against.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class HighlightBenchmark {
+    @Param({"1KB", "64KB", "1MB", "10MB", "50MB"})
+    public String size;
+
+    private String text;
+    private syntax tokenizer;
+    private JavaLexer codeEditorLexer;
+
+    @Setup
+    public void setUp() {
+        text = Sources.javaSource(Sources.parseSize(size));
+        tokenizer = new syntax();
+        codeEditorLexer = new JavaLexer("public", "class", "void", "static", "int", "String", "return");
+    }
+
+    @Benchmark
+    public int syntaxTokenize() {
+        return tokenizer.tokenize(text);
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> syntaxComputeHighlighting() {
+        return syntax.computeHighlighting(text);
+    }
+
+    // Full pass of the CodeEditor highlighter, as used on open and after large pastes
+    @Benchmark
+    public void codeEditorFullLex(Blackhole blackhole) {
+        blackhole.consume(IncrementalHighlighter.lexAll(codeEditorLexer, text));
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> projectFluxv3Highlight() {
+        return ProjectFluxv3.computeHighlighting(text);
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> legacyCodeEditorKeywords() {
+        Matcher matcher = LEGACY_KEYWORDS.matcher(text);
+        int lastKwEnd = 0;
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        while (matcher.find()) {
+            spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
+            spansBuilder.add(Collections.singleton("keyword"), matcher.end() - matcher.start());
+            lastKwEnd = matcher.end();
+        }
+        spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
+        return spansBuilder.create();
+    }
+
+    // The six passes of the old ProjectFluxv3 listener, minus the per-match setStyleClass calls
+    @Benchmark
+    public void legacyProjectFluxv3Patterns(Blackhole blackhole) {
+        for (Pattern pattern : LEGACY_V3_PATTERNS) {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                blackhole.consume(matcher.start());
+                blackhole.consume(matcher.end());
+            }
+        }
+    }
+
+    private static final Pattern LEGACY_KEYWORDS = Pattern.compile("(?<KEYWORD>\\b(public|class|void|static|int|String|return)\\b)");
+
+    private static final Pattern[] LEGACY_V3_PATTERNS = {
+            Pattern.compile("\\b(class|public|static|void|int|new|if|else|return|double|float|boolean|char|String|long|short|byte)\\b"),
+            Pattern.compile("//.*|/\\*.*?\\*/", Pattern.DOTALL),
+            Pattern.compile("\"([^\"\\\\]*(\\\\.[^\"\\\\]*)*)\""),
+            Pattern.compile("\\b\\d+(\\.\\d+)?\\b"),
+            Pattern.compile("[=+\\-*/&|!><]=?"),
+            Pattern.compile("@\\w+")
+    };
+}
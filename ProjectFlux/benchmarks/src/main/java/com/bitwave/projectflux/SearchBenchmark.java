@@ -0,0 +1,113 @@
+package com.bitwave.projectflux;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Find in Files over generated sources: building the trigram index, indexed literal and regex
+// queries for a rare identifier, and a plain read-every-file grep as the baseline. Go to File
+// is measured over the same paths, both as a fresh query and as one more typed character.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SearchBenchmark {
+    private static final String NEEDLE = "rareIdentifierForSearch";
+
+    @Param({"2000", "20000"})
+    public int files;
+
+    private Path root;
+    private ProjectSnapshot snapshot;
+    private TrigramIndex index;
+    private PathIndex pathIndex;
+    private PathIndex.Result typedSoFar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        root = Files.createTempDirectory("flux-search");
+        String source = Sources.javaSource(8 * 1024);
+        for (int f = 0; f < files; f++) {
+            Path directory = root.resolve("pkg" + f / 100);
+            Files.createDirectories(directory);
+            String content = f % 500 == 0 ? source + "\nint " + NEEDLE + f + " = 0;\n" : source;
+            Files.writeString(directory.resolve("File" + f + ".java"), content);
+        }
+        snapshot = new ParallelProjectScanner().scan(root);
+        index = TrigramIndex.build(snapshot);
+        pathIndex = PathIndex.build(snapshot);
+        typedSoFar = pathIndex.search("pkg1fil", null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Sources.deleteTree(root);
+    }
+
+    @Benchmark
+    public TrigramIndex buildIndex() throws InterruptedException {
+        return TrigramIndex.build(snapshot);
+    }
+
+    @Benchmark
+    public int literalSearch() throws InterruptedException {
+        return search(new SearchQuery(NEEDLE, false, true));
+    }
+
+    @Benchmark
+    public int regexSearch() throws InterruptedException {
+        return search(new SearchQuery("int " + NEEDLE + "\\d+ =", true, false));
+    }
+
+    // What searching costs without the index: every file read and split into lines
+    @Benchmark
+    public int naiveGrep() throws IOException {
+        int hits = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!snapshot.isDirectory(i)) {
+                for (String line : Files.readAllLines(snapshot.path(i))) {
+                    if (line.contains(NEEDLE)) {
+                        hits++;
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int goToFile() throws InterruptedException {
+        return pathIndex.search("pkg1file12", null).matches.length;
+    }
+
+    // The next keystroke only re-checks what matched the query before it
+    @Benchmark
+    public int goToFileNextKey() throws InterruptedException {
+        return pathIndex.search("pkg1file", typedSoFar).matches.length;
+    }
+
+    private int search(SearchQuery query) throws InterruptedException {
+        AtomicInteger hits = new AtomicInteger();
+        index.search(query, hit -> hits.incrementAndGet(), new AtomicBoolean());
+        return hits.get();
+    }
+}
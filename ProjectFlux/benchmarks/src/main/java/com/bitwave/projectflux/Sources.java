@@ -0,0 +1,82 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Synthetic inputs shared by the benchmarks
+final class Sources {
+    private static final String TEMPLATE = """
+            package bench.generated;
+
+            import java.util.List;
+
+            /*
+             * Generated class %1$d. Block comments span lines so
+             * multi-line lexer state is exercised as well.
+             */
+            @SuppressWarnings("unused")
+            public class Generated%1$d {
+                private static final String NAME = "Generated \\"%1$d\\"";
+                private final int[] values = new int[%1$d];
+
+                public int sum(List<Integer> input) {
+                    int total = 0x1F;
+                    for (int i = 0; i < input.size(); i++) {
+                        if (input.get(i) >= 10 && total != 42) {
+                            total += input.get(i) * 2.5f > 3 ? 1 : 0; // trailing comment
+                        }
+                    }
+                    return total;
+                }
+            }
+
+            """;
+
+    private Sources() {
+    }
+
+    // Parses sizes like "1KB", "64KB", "1MB" or "50MB"
+    static int parseSize(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        }
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(size);
+    }
+
+    static String javaSource(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes + TEMPLATE.length() * 2);
+        for (int i = 0; builder.length() < bytes; i++) {
+            builder.append(String.format(TEMPLATE, i));
+        }
+        builder.setLength(bytes);
+        return builder.toString();
+    }
+
+    // Creates a directory tree with the given depth, sub-directories per directory and files per directory
+    static void directoryTree(Path root, int depth, int directories, int files) throws IOException {
+        Files.createDirectories(root);
+        for (int f = 0; f < files; f++) {
+            Files.writeString(root.resolve("File" + f + ".java"), "class File" + f + " {}\n");
+        }
+        if (depth > 0) {
+            for (int d = 0; d < directories; d++) {
+                directoryTree(root.resolve("dir" + d), depth - 1, directories, files);
+            }
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (var paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bitwave.projectflux;
+
+import javafx.scene.control.TreeItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Project explorer tree building and project scans over a synthetic directory tree.
+// depth 3 x 8 dirs x 10 files is ~5.8k entries, depth 4 is ~46k.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBuildBenchmark {
+    @Param({"3", "4"})
+    public int depth;
+
+    @Param({"8"})
+    public int directories;
+
+    @Param({"10"})
+    public int files;
+
+    private Path root;
+    private ProjectSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FxToolkit.start();
+        root = Files.createTempDirectory("flux-tree");
+        Sources.directoryTree(root, depth, directories, files);
+        snapshot = new ParallelProjectScanner().scan(root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Sources.deleteTree(root);
+    }
+
+    // What opening a project costs now: the root item plus its first level
+    @Benchmark
+    public List<TreeItem<String>> projectExplorerOpen() {
+        LazyTreeItem<String> rootItem = new ProjectFluxv1().createDirectoryTree(root);
+        return rootItem.listChildren();
+    }
+
+    // Worst case: every folder expanded, comparable to the old eager builders
+    @Benchmark
+    public int projectExplorerExpandAll() {
+        return expandAll(new LazyTreeItem<>(root, true, Path::toFile, new File("Loading...")));
+    }
+
+    // Full parallel scan, as run in the background when a project is opened
+    @Benchmark
+    public int projectScan() throws IOException {
+        return new ParallelProjectScanner().scan(root).size();
+    }
+
+    // Reopening an unchanged project: one modification time check per directory
+    @Benchmark
+    public int projectRescan() throws IOException {
+        return new ParallelProjectScanner().scan(root, snapshot).size();
+    }
+
+    private static int expandAll(LazyTreeItem<File> item) {
+        int count = 1;
+        for (TreeItem<File> child : item.listChildren()) {
+            LazyTreeItem<File> lazyChild = (LazyTreeItem<File>) child;
+            count += lazyChild.isDirectory() ? expandAll(lazyChild) : 1;
+        }
+        return count;
+    }
+}
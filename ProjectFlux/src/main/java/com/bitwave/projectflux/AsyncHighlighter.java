@@ -0,0 +1,87 @@
+package com.bitwave.projectflux;
+
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Runs a highlighting pass off the FX thread. Edits restart a short quiet period, any
+// in-flight pass is cancelled, and a result is only applied if no edit happened since
+// its text snapshot was taken. Cancelling interrupts the pass, so compute should check
+// the interrupt now and then and give up with a CancellationException. All methods must
+// be called on the FX thread.
+class AsyncHighlighter<T> {
+    private final Supplier<String> snapshot;
+    private final Function<String, T> compute;
+    private final Consumer<T> apply;
+    private final PauseTransition debounce;
+
+    private long version;
+    private Future<?> running;
+
+    AsyncHighlighter(Supplier<String> snapshot, Function<String, T> compute, Consumer<T> apply, Duration delay) {
+        this.snapshot = snapshot;
+        this.compute = compute;
+        this.apply = apply;
+        debounce = new PauseTransition(delay);
+        debounce.setOnFinished(e -> runNow());
+    }
+
+    void schedule() {
+        version++;
+        cancelRunning();
+        debounce.playFromStart();
+    }
+
+    void runNow() {
+        debounce.stop();
+        cancelRunning();
+        long requested = ++version;
+        String text = snapshot.get();
+        running = FluxExecutors.COMPUTE.submit(() -> {
+            T result = null;
+            try {
+                result = compute.apply(text);
+            } catch (CancellationException e) {
+                // Superseded by a newer pass
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // System.err is the console
+            } finally {
+                // A pass that failed still ends, so isPending does not stay true
+                T computed = result;
+                Platform.runLater(() -> {
+                    if (requested == version) {
+                        running = null;
+                        if (computed != null) {
+                            apply.accept(computed);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Drops any scheduled or in-flight pass without starting a new one
+    void cancel() {
+        debounce.stop();
+        cancelRunning();
+        version++;
+    }
+
+    boolean isPending() {
+        return running != null || debounce.getStatus() == Animation.Status.RUNNING;
+    }
+
+    private void cancelRunning() {
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.bitwave.projectflux;
+
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.VBox;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Build, Run and Stop buttons for the editor's code, shared by ProjectFluxv4 and v5
+class BuildRunPanel extends VBox {
+
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+    private static final Pattern PUBLIC_TYPE = Pattern.compile(
+            "^\\s*public\\s+(?:(?:final|abstract|sealed|non-sealed|strictfp)\\s+)*(?:class|interface|enum|record)\\s+(\\w+)", Pattern.MULTILINE);
+    private static final long RUN_TIMEOUT = TimeUnit.MINUTES.toMillis(30); // Stops runaway programs
+
+    private final CodeEditor codeEditor;
+    private final Terminal terminal;
+    private final WarmRunner runner = new WarmRunner();
+    private final CheckBox newJvm = new CheckBox("New JVM");
+    private Path editorFile; // null while the editor holds a buffer that was never saved
+    private Path sourceRoot;
+    // Only touched on the build thread
+    private InMemoryCompiler compiler;
+    private BuildScheduler scheduler;
+
+    public BuildRunPanel(CodeEditor codeEditor, Terminal terminal) {
+        this.codeEditor = codeEditor;
+        this.terminal = terminal;
+
+        Button buildButton = new Button("Build");
+        buildButton.setOnAction(e -> buildProject());
+
+        Button runButton = new Button("Run");
+        runButton.setOnAction(e -> runProject());
+
+        Button stopButton = new Button("Stop");
+        stopButton.setOnAction(e -> terminal.stopAll());
+
+        // For programs that change JVM-wide state, which would otherwise carry over into later runs
+        newJvm.setTooltip(new Tooltip("Run in a JVM of its own instead of the warm one"));
+
+        getChildren().addAll(buildButton, runButton, stopButton, newJvm);
+    }
+
+    // The file the editor text belongs to, so the build uses the text instead of what is on disk
+    public void setEditorFile(Path file) {
+        editorFile = file;
+    }
+
+    // The project folder. Builds then cover each of its modules, compiling the sources that changed
+    // since the last build and whatever depends on them. Without one, only the editor's file is
+    // compiled, along with whatever it uses from its own source tree.
+    public void setSourceRoot(Path root) {
+        sourceRoot = root;
+    }
+
+    // Compiles in-process from the editor text, so nothing has to be saved first
+    private void buildProject() {
+        String code = codeEditor.getText();
+        Path file = editorFile != null ? editorFile : Path.of(publicTypeName(code) + ".java");
+        Path root = sourceRoot != null ? sourceRoot : editorFile != null ? sourceRootOf(editorFile, code) : null;
+        boolean wholeProject = sourceRoot != null;
+        InMemoryCompiler.BUILD.execute(() -> build(root, wholeProject, file, code));
+    }
+
+    // Builds, then runs the editor's class in the warm JVM, so a run takes about as long as the build
+    private void runProject() {
+        String code = codeEditor.getText();
+        Path file = editorFile != null ? editorFile : Path.of(publicTypeName(code) + ".java");
+        String className = file.getFileName().toString().replaceFirst("\\.java$", "");
+        Matcher packageName = PACKAGE.matcher(code);
+        String mainClass = packageName.find() ? packageName.group(1) + "." + className : className;
+        Path root = sourceRoot != null ? sourceRoot : editorFile != null ? sourceRootOf(editorFile, code) : null;
+        boolean wholeProject = sourceRoot != null;
+        boolean fresh = newJvm.isSelected();
+        InMemoryCompiler.BUILD.execute(() -> {
+            if (build(root, wholeProject, file, code)) {
+                Map<String, byte[]> classes = wholeProject ? scheduler.classes() : compiler.classes();
+                List<Path> libraries = wholeProject ? scheduler.libraries() : List.of();
+                terminal.appendLine("Running " + mainClass + "...", false);
+                terminal.runProgram(runner, classes, libraries, mainClass, fresh, RUN_TIMEOUT);
+            }
+        });
+    }
+
+    // Build thread only
+    private boolean build(Path root, boolean wholeProject, Path file, String code) {
+        terminal.appendLine("Building " + (wholeProject ? root : file.getFileName()) + "...", false);
+        runner.prestart(); // So the worker JVM is up by the time the program runs
+        try {
+            if (wholeProject) {
+                return buildModules(root, file, code);
+            }
+            if (compiler == null) {
+                compiler = new InMemoryCompiler();
+            }
+            InMemoryCompiler.Result result = compiler.compile(List.of(file), Map.of(file, code), root);
+            report(result.diagnostics);
+            terminal.appendLine(result.success
+                    ? "Build succeeded: " + result.classes.size() + " classes in " + result.millis + " ms"
+                    : "Build failed in " + result.millis + " ms", !result.success);
+            return result.success;
+        } catch (IOException | IllegalStateException e) {
+            terminal.appendLine("Build failed: " + e.getMessage(), true);
+            return false;
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // Or it would end the build thread's task without a word
+            terminal.appendLine("Build failed: " + e, true);
+            return false;
+        }
+    }
+
+    // Build thread only
+    private boolean buildModules(Path root, Path file, String code) throws IOException {
+        if (scheduler == null || !scheduler.root().equals(root.toAbsolutePath().normalize())) {
+            scheduler = new BuildScheduler(root);
+        }
+        BuildScheduler.Result result = scheduler.build(Map.of(file.toAbsolutePath().normalize(), code));
+        for (BuildScheduler.ModuleResult module : result.modules) {
+            if (module.result != null) {
+                report(module.result.diagnostics);
+                terminal.appendLine(module.module.name + ": " + module.result.compiled + " of " + module.result.sources
+                        + " sources compiled in " + module.result.millis + " ms", !module.success());
+            } else {
+                terminal.appendLine(module.module.name + ": " + (module.error != null ? module.error : "skipped, a dependency failed"), true);
+            }
+        }
+        List<String> criticalPath = new ArrayList<>();
+        result.criticalPath.forEach(module -> criticalPath.add(module.name));
+        terminal.appendLine((result.success ? "Build succeeded" : "Build failed") + " in " + result.millis + " ms, critical path "
+                + String.join(" -> ", criticalPath) + " " + result.criticalPathMillis + " ms", !result.success);
+        return result.success;
+    }
+
+    private void report(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            terminal.appendLine(InMemoryCompiler.format(diagnostic), diagnostic.getKind() == Diagnostic.Kind.ERROR);
+        }
+    }
+
+    // The folder the file's package starts in, e.g. src for src/com/example/Main.java
+    private static Path sourceRootOf(Path file, String code) {
+        Path root = file.toAbsolutePath().getParent();
+        Matcher matcher = PACKAGE.matcher(code);
+        if (matcher.find()) {
+            for (int i = matcher.group(1).split("\\.").length; i > 0 && root != null; i--) {
+                root = root.getParent();
+            }
+        }
+        return root;
+    }
+
+    private static String publicTypeName(String code) {
+        Matcher matcher = PUBLIC_TYPE.matcher(code);
+        return matcher.find() ? matcher.group(1) : "Main";
+    }
+}
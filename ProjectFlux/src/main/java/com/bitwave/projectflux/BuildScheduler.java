@@ -0,0 +1,226 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Builds every module of a project, each as soon as the modules it depends on are done, so
+// independent modules compile at the same time on WORKERS. Each module keeps its own incremental
+// builder and compiler between builds; a module compiles against the classes of everything it
+// depends on, and recompiles the sources that use whatever their builds changed. A module whose
+// dependency failed is skipped, and catches up on the changes it missed once it does build.
+// Jars from the local Maven repository are on the class path of the module whose pom lists them
+// and of every module that depends on it; a module with a jar missing from there is not built.
+// Call build from one thread at a time, e.g. InMemoryCompiler.BUILD.
+final class BuildScheduler {
+    static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()), FluxExecutors.daemonThreads("flux-build-worker"));
+
+    static final class ModuleResult {
+        final ModuleGraph.Module module;
+        final IncrementalBuilder.Result result; // null if skipped
+        final String error; // set if the build could not run at all
+
+        ModuleResult(ModuleGraph.Module module, IncrementalBuilder.Result result, String error) {
+            this.module = module;
+            this.result = result;
+            this.error = error;
+        }
+
+        boolean success() {
+            return result != null && result.success;
+        }
+
+        long millis() {
+            return result == null ? 0 : result.millis;
+        }
+    }
+
+    static final class Result {
+        final boolean success;
+        final List<ModuleResult> modules; // Dependencies before dependents
+        final List<ModuleGraph.Module> criticalPath;
+        final long criticalPathMillis; // How long the build would take with a core per module
+        final long millis;
+
+        Result(boolean success, List<ModuleResult> modules, List<ModuleGraph.Module> criticalPath,
+               long criticalPathMillis, long millis) {
+            this.success = success;
+            this.modules = modules;
+            this.criticalPath = criticalPath;
+            this.criticalPathMillis = criticalPathMillis;
+            this.millis = millis;
+        }
+    }
+
+    // Upstream changes a module has not built against yet
+    private static final class Pending {
+        final Set<String> changed = new HashSet<>();
+        boolean constantsChanged;
+    }
+
+    private final Path root;
+    private final Map<Path, IncrementalBuilder> builders = new ConcurrentHashMap<>(); // by source root
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    private ProjectSnapshot snapshot;
+    private ModuleGraph graph;
+
+    BuildScheduler(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    Path root() {
+        return root;
+    }
+
+    // The modules found by the last build, or null before the first one
+    ModuleGraph graph() {
+        return graph;
+    }
+
+    // Builds every module; sources with an entry in buffers are compiled from that text instead of the disk
+    Result build(Map<Path, String> buffers) throws IOException {
+        long started = System.nanoTime();
+        snapshot = snapshot == null ? new ParallelProjectScanner().scan(root) : new ParallelProjectScanner().scan(root, snapshot);
+        graph = ModuleGraph.discover(snapshot);
+
+        Map<ModuleGraph.Module, CompletableFuture<ModuleResult>> futures = new ConcurrentHashMap<>(); // Read by the workers
+        for (ModuleGraph.Module module : graph.modules()) {
+            // Modules come in dependency order, so every dependency already has its future
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[module.dependencies.size()];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = futures.get(module.dependencies.get(i));
+            }
+            futures.put(module, CompletableFuture.allOf(dependencies)
+                    .thenApplyAsync(ignored -> buildModule(module, buffers, futures), WORKERS));
+        }
+
+        List<ModuleResult> results = new ArrayList<>();
+        Map<ModuleGraph.Module, Long> durations = new HashMap<>();
+        boolean success = true;
+        for (ModuleGraph.Module module : graph.modules()) {
+            ModuleResult result = futures.get(module).join();
+            results.add(result);
+            durations.put(module, result.millis());
+            success &= result.success();
+        }
+        List<ModuleGraph.Module> criticalPath = graph.criticalPath(durations);
+        long criticalPathMillis = 0;
+        for (ModuleGraph.Module module : criticalPath) {
+            criticalPathMillis += durations.get(module);
+        }
+        builders.keySet().retainAll(sourceRoots());
+        pending.keySet().retainAll(sourceRoots());
+        return new Result(success, results, criticalPath, criticalPathMillis, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Every class of the last build, for running the project
+    Map<String, byte[]> classes() {
+        Map<String, byte[]> classes = new HashMap<>();
+        if (graph != null) {
+            for (ModuleGraph.Module module : graph.modules()) {
+                IncrementalBuilder builder = builders.get(module.sourceRoot);
+                if (builder != null) {
+                    classes.putAll(builder.classes());
+                }
+            }
+        }
+        return classes;
+    }
+
+    // The jars every module of the last build compiled against, for running the project
+    List<Path> libraries() {
+        Set<Path> libraries = new LinkedHashSet<>();
+        if (graph != null) {
+            for (ModuleGraph.Module module : graph.modules()) {
+                libraries.addAll(module.libraries);
+            }
+        }
+        return new ArrayList<>(libraries);
+    }
+
+    // Runs on WORKERS once every dependency has finished, so their results and classes are final
+    private ModuleResult buildModule(ModuleGraph.Module module, Map<Path, String> buffers,
+                                     Map<ModuleGraph.Module, CompletableFuture<ModuleResult>> futures) {
+        Pending missed = pending.computeIfAbsent(module.sourceRoot, key -> new Pending());
+        if (!module.missingLibraries.isEmpty()) {
+            return new ModuleResult(module, null, "not in the local Maven repository, run mvn dependency:resolve: "
+                    + String.join(", ", module.missingLibraries));
+        }
+        Map<String, byte[]> upstream = new HashMap<>();
+        Set<Path> libraries = new LinkedHashSet<>(module.libraries);
+        boolean dependenciesBuilt = true;
+        for (ModuleGraph.Module dependency : transitiveDependencies(module)) {
+            libraries.addAll(dependency.libraries);
+            ModuleResult result = futures.get(dependency).join();
+            if (result.result != null) {
+                missed.changed.addAll(result.result.abiChanged);
+                missed.constantsChanged |= result.result.constantsChanged;
+            }
+            if (result.success()) {
+                upstream.putAll(builders.get(dependency.sourceRoot).classes());
+            } else {
+                dependenciesBuilt = false;
+            }
+        }
+        if (!dependenciesBuilt) {
+            return new ModuleResult(module, null, null);
+        }
+        try {
+            IncrementalBuilder builder = builders.computeIfAbsent(module.sourceRoot,
+                    sourceRoot -> IncrementalBuilder.open(sourceRoot, new InMemoryCompiler()));
+            builder.setLibraries(new ArrayList<>(libraries));
+            Map<Path, String> moduleBuffers = new HashMap<>();
+            buffers.forEach((path, text) -> {
+                if (path.startsWith(builder.root())) {
+                    moduleBuffers.put(path, text);
+                }
+            });
+            IncrementalBuilder.Result result = builder.build(moduleBuffers, upstream, missed.changed, missed.constantsChanged);
+            if (result.success) {
+                missed.changed.clear();
+                missed.constantsChanged = false;
+            }
+            return new ModuleResult(module, result, null);
+        } catch (IOException e) {
+            return new ModuleResult(module, null, e.getMessage());
+        } catch (IllegalStateException | UncheckedIOException e) {
+            return new ModuleResult(module, null, String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            // Anything else, e.g. javac crashing, fails this module only instead of the build's join
+            e.printStackTrace();
+            return new ModuleResult(module, null, e.toString());
+        }
+    }
+
+    private static Set<ModuleGraph.Module> transitiveDependencies(ModuleGraph.Module module) {
+        Set<ModuleGraph.Module> found = new LinkedHashSet<>();
+        List<ModuleGraph.Module> toVisit = new ArrayList<>(module.dependencies);
+        while (!toVisit.isEmpty()) {
+            ModuleGraph.Module next = toVisit.remove(toVisit.size() - 1);
+            if (found.add(next)) {
+                toVisit.addAll(next.dependencies);
+            }
+        }
+        return found;
+    }
+
+    private Set<Path> sourceRoots() {
+        Set<Path> sourceRoots = new HashSet<>();
+        for (ModuleGraph.Module module : graph.modules()) {
+            sourceRoots.add(module.sourceRoot);
+        }
+        return sourceRoots;
+    }
+}
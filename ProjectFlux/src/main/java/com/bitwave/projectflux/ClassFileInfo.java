@@ -0,0 +1,224 @@
+package com.bitwave.projectflux;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// What the incremental build needs from a compiled class: the classes it refers to, and hashes of
+// its ABI, i.e. everything another class can compile against. Method bodies and private members
+// are left out of the ABI, so changing them does not force dependents to recompile. Constant
+// values get their own hash because javac copies them into the classes that use them without
+// leaving any reference behind. A class's ABI also takes in what it inherits, which its own class
+// file does not show, so the build follows its supertypes too.
+final class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_SUPER_OR_SYNCHRONIZED = 0x0020; // Neither changes what callers compile against
+
+    final String name; // Binary name, e.g. com.example.Outer$Inner
+    final Set<String> references;
+    final List<String> supertypes; // Binary names of the superclass and interfaces
+    final long abiHash;
+    final long constantsHash;
+
+    private ClassFileInfo(String name, Set<String> references, List<String> supertypes, long abiHash, long constantsHash) {
+        this.name = name;
+        this.references = references;
+        this.supertypes = supertypes;
+        this.abiHash = abiHash;
+        this.constantsHash = constantsHash;
+    }
+
+    static ClassFileInfo parse(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int poolSize = in.readUnsignedShort();
+        Object[] pool = new Object[poolSize]; // Utf8 as String, Class as int[] {name index}, constants boxed
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    pool[i] = in.readUTF();
+                    break;
+                case 3:
+                    pool[i] = in.readInt();
+                    break;
+                case 4:
+                    pool[i] = in.readFloat();
+                    break;
+                case 5: // Longs and doubles take two slots
+                    pool[i++] = in.readLong();
+                    break;
+                case 6:
+                    pool[i++] = in.readDouble();
+                    break;
+                case 7:
+                    pool[i] = new int[]{in.readUnsignedShort()};
+                    break;
+                case 8:
+                    pool[i] = new StringConstant(in.readUnsignedShort());
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                case 16:
+                case 19:
+                case 20:
+                    in.skipBytes(2);
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    in.skipBytes(4);
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> references = new HashSet<>();
+        for (Object entry : pool) {
+            if (entry instanceof int[]) {
+                addClassName((String) pool[((int[]) entry)[0]], references);
+            } else if (entry instanceof String) {
+                addDescriptorTypes((String) entry, references); // Field, method and generic signatures
+            }
+        }
+
+        List<String> abi = new ArrayList<>();
+        List<String> constants = new ArrayList<>();
+        int access = in.readUnsignedShort() & ~ACC_SUPER_OR_SYNCHRONIZED;
+        String name = className(pool, in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        StringBuilder header = new StringBuilder("class ").append(access).append(' ').append(name)
+                .append(" extends ").append(superIndex == 0 ? "" : className(pool, superIndex));
+        List<String> supertypes = new ArrayList<>();
+        if (superIndex != 0) {
+            supertypes.add(className(pool, superIndex).replace('/', '.'));
+        }
+        int interfaces = in.readUnsignedShort();
+        for (int i = 0; i < interfaces; i++) {
+            String interfaceName = className(pool, in.readUnsignedShort());
+            header.append(' ').append(interfaceName);
+            supertypes.add(interfaceName.replace('/', '.'));
+        }
+
+        for (String kind : new String[]{"field ", "method "}) {
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                int memberAccess = in.readUnsignedShort();
+                String member = kind + (memberAccess & ~ACC_SUPER_OR_SYNCHRONIZED) + ' '
+                        + pool[in.readUnsignedShort()] + ' ' + pool[in.readUnsignedShort()];
+                List<String> constantValue = new ArrayList<>(1);
+                String attributes = readAttributes(in, pool, constantValue);
+                if ((memberAccess & ACC_PRIVATE) == 0) {
+                    abi.add(member + attributes);
+                    if (!constantValue.isEmpty()) {
+                        constants.add(member + '=' + constantValue.get(0));
+                    }
+                }
+            }
+        }
+        header.append(readAttributes(in, pool, null)); // Class attributes come after the members
+        abi.add(header.toString());
+        // Member order is up to the compiler, so it must not change the hash
+        Collections.sort(abi);
+        Collections.sort(constants);
+        String binaryName = name.replace('/', '.');
+        references.remove(binaryName);
+        return new ClassFileInfo(binaryName, references, supertypes, hash(abi), hash(constants));
+    }
+
+    // The attributes that are part of the ABI, as text; the rest are skipped
+    private static String readAttributes(DataInputStream in, Object[] pool, List<String> constantValue) throws IOException {
+        StringBuilder abi = new StringBuilder();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String attribute = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (attribute.equals("Signature")) {
+                abi.append(" signature ").append(pool[in.readUnsignedShort()]);
+            } else if (attribute.equals("Exceptions")) {
+                int exceptions = in.readUnsignedShort();
+                abi.append(" throws");
+                for (int k = 0; k < exceptions; k++) {
+                    abi.append(' ').append(className(pool, in.readUnsignedShort()));
+                }
+            } else if (attribute.equals("ConstantValue") && constantValue != null) {
+                Object value = pool[in.readUnsignedShort()];
+                constantValue.add(value instanceof StringConstant ? (String) pool[((StringConstant) value).index] : String.valueOf(value));
+            } else {
+                in.skipBytes(length);
+            }
+        }
+        return abi.toString();
+    }
+
+    private static String className(Object[] pool, int classIndex) {
+        return (String) pool[((int[]) pool[classIndex])[0]];
+    }
+
+    // Class entries hold internal names, or array descriptors such as [Lcom/example/Foo;
+    private static void addClassName(String name, Set<String> references) {
+        if (name.startsWith("[")) {
+            addDescriptorTypes(name, references);
+        } else {
+            references.add(name.replace('/', '.'));
+        }
+    }
+
+    // Every Lcom/example/Foo; (or Lcom/example/Foo<...>) in a descriptor or signature. Applied to
+    // every string in the pool, so the odd string literal may add a reference that is not one;
+    // that only means an extra recompile, never a missed one.
+    private static void addDescriptorTypes(String text, Set<String> references) {
+        int start = text.indexOf('L');
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < text.length() && isNamePart(text.charAt(end))) {
+                end++;
+            }
+            if (end > start + 1 && end < text.length() && (text.charAt(end) == ';' || text.charAt(end) == '<')) {
+                references.add(text.substring(start + 1, end).replace('/', '.'));
+            }
+            start = text.indexOf('L', end);
+        }
+    }
+
+    private static boolean isNamePart(char c) {
+        return c == '/' || c == '$' || Character.isJavaIdentifierPart(c);
+    }
+
+    // 64-bit FNV-1a over the sorted lines
+    private static long hash(List<String> lines) {
+        long hash = 0xcbf29ce484222325L;
+        for (String line : lines) {
+            for (byte b : line.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class StringConstant {
+        final int index;
+
+        StringConstant(int index) {
+            this.index = index;
+        }
+    }
+}
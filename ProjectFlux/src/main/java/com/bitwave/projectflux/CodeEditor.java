@@ -0,0 +1,25 @@
+package com.bitwave.projectflux;
+
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.LineNumberFactory;
+
+// Code editor with line numbers and syntax highlighting, shared by ProjectFluxv4 and v5
+class CodeEditor extends CodeArea {
+
+    private static final String[] KEYWORDS = new String[]{"public", "class", "void", "static", "int", "String", "return"};
+
+    private final IncrementalHighlighter highlighter;
+
+    public CodeEditor() {
+        setParagraphGraphicFactory(LineNumberFactory.get(this)); // Add line numbers
+        highlighter = new IncrementalHighlighter(this, new JavaLexer(KEYWORDS)); // Re-highlights only the edited paragraphs
+    }
+
+    public void setHighlightingSuspended(boolean suspended) {
+        highlighter.setSuspended(suspended);
+    }
+
+    boolean isHighlightingPending() {
+        return highlighter.isPending();
+    }
+}
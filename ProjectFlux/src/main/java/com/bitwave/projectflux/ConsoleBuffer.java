@@ -0,0 +1,86 @@
+package com.bitwave.projectflux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Fixed-size ring of console lines. Any number of threads append without locking: each claims a
+// sequence number and stores an immutable Line in that slot. One reader drains whatever it has not
+// seen yet. When writers get more than a ring ahead, the oldest lines are overwritten and counted
+// as dropped, so memory stays constant however fast output arrives.
+final class ConsoleBuffer {
+    static final class Line {
+        final long sequence;
+        final String text;
+        final boolean stderr;
+
+        Line(long sequence, String text, boolean stderr) {
+            this.sequence = sequence;
+            this.text = text;
+            this.stderr = stderr;
+        }
+    }
+
+    private final AtomicReferenceArray<Line> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong(); // Sequence number of the next line to be written
+    private long read; // Next sequence the reader wants, reader thread only
+    private long dropped;
+
+    // Rounds capacity up to a power of two
+    ConsoleBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    // Safe from any thread
+    void add(String text, boolean stderr) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) sequence & mask, new Line(sequence, text, stderr));
+    }
+
+    // True if there may be lines the reader has not taken yet
+    boolean hasUnread() {
+        return next.get() != read;
+    }
+
+    // Reader thread only. Returns lines in order and stops at a slot whose writer has claimed it but
+    // not stored its line yet; that line is picked up by the next drain.
+    List<Line> drain() {
+        long end = next.get();
+        if (end - read > slots.length()) {
+            dropped += end - slots.length() - read;
+            read = end - slots.length();
+        }
+        List<Line> lines = new ArrayList<>((int) (end - read));
+        while (read < end) {
+            Line line = slots.get((int) read & mask);
+            if (line == null || line.sequence < read) {
+                break; // Not written yet
+            }
+            if (line.sequence > read) {
+                dropped++; // Overwritten by a writer a full ring ahead
+            } else {
+                lines.add(line);
+            }
+            read++;
+        }
+        return lines;
+    }
+
+    // Reader thread only: forgets everything written so far
+    void skipAll() {
+        read = next.get();
+    }
+
+    // Reader thread only: lines overwritten before they could be drained
+    long dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,79 @@
+package com.bitwave.projectflux;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Feeds a ConsoleView from a byte stream such as System.out. Bytes go through a streaming UTF-8
+// decoder, so a character split across two writes still comes out whole, and finished lines go
+// into the console's lock-free buffer. Nothing here touches the UI, so any thread may write.
+final class ConsoleOutputStream extends OutputStream {
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(8192); // Left in write mode between calls
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    private final ConsoleView.LineWriter writer;
+
+    ConsoleOutputStream(ConsoleView console, boolean stderr) {
+        writer = console.newWriter(stderr);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (!bytes.hasRemaining()) {
+            decode(false);
+        }
+        bytes.put((byte) b);
+        if (b == '\n') {
+            decode(false);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int count = Math.min(length, bytes.remaining());
+            bytes.put(data, offset, count);
+            offset += count;
+            length -= count;
+            decode(false);
+        }
+    }
+
+    // Shows the current line even though it has not ended yet, e.g. a prompt
+    @Override
+    public synchronized void flush() {
+        decode(false);
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        decode(true);
+        decoder.flush(chars);
+        drainChars();
+        writer.flush();
+    }
+
+    // Decodes every complete character; the bytes of an unfinished one wait for the next write
+    private void decode(boolean endOfInput) {
+        bytes.flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            drainChars();
+        } while (result.isOverflow());
+        bytes.compact();
+    }
+
+    private void drainChars() {
+        chars.flip();
+        writer.write(chars);
+        chars.clear();
+    }
+}
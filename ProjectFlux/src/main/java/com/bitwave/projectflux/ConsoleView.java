@@ -0,0 +1,140 @@
+package com.bitwave.projectflux;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Console output as a virtualized list of at most maxLines lines. Producers on any thread append to
+// a ConsoleBuffer; the list takes whatever arrived since the last frame in one batch, so the cost
+// per line stays the same however much has been printed. stderr lines are shown in red.
+class ConsoleView extends ListView<ConsoleBuffer.Line> {
+    static final int DEFAULT_MAX_LINES = 50_000;
+    // Longer lines are broken up so a stream without newlines cannot grow a line without bound
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    private final int maxLines;
+    private final ConsoleBuffer buffer;
+    private final AnimationTimer drain;
+    // Set while the drain timer runs or is about to, so producers schedule it at most once
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private long shownDropped;
+
+    ConsoleView(int maxLines) {
+        this.maxLines = maxLines;
+        buffer = new ConsoleBuffer(maxLines);
+        setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(ConsoleBuffer.Line line, boolean empty) {
+                super.updateItem(line, empty);
+                setText(empty || line == null ? null : line.text);
+                setStyle(!empty && line != null && line.stderr ? "-fx-text-fill: #c62828;" : null);
+            }
+        });
+        drain = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drainBuffer();
+            }
+        };
+    }
+
+    // Appends one complete line. Safe from any thread.
+    void appendLine(String line, boolean stderr) {
+        buffer.add(line, stderr);
+        if (draining.compareAndSet(false, true)) {
+            Platform.runLater(drain::start);
+        }
+    }
+
+    // Splits a stream of text into lines for this console. Each writer keeps its own partial line,
+    // so it must only be used by one thread at a time, e.g. the pump thread of one pipe.
+    LineWriter newWriter(boolean stderr) {
+        return new LineWriter(stderr);
+    }
+
+    // FX thread only
+    void clear() {
+        buffer.skipAll();
+        getItems().clear();
+    }
+
+    private void drainBuffer() {
+        List<ConsoleBuffer.Line> lines = buffer.drain();
+        if (lines.isEmpty()) {
+            // Producers add before they check the flag, so anything added after this check
+            // finds it cleared and starts the timer again
+            draining.set(false);
+            if (!buffer.hasUnread() || !draining.compareAndSet(false, true)) {
+                drain.stop();
+            }
+            return;
+        }
+        if (buffer.dropped() != shownDropped) {
+            lines.add(0, new ConsoleBuffer.Line(-1, "... " + (buffer.dropped() - shownDropped) + " lines skipped ...", true));
+            shownDropped = buffer.dropped();
+        }
+
+        boolean following = isFollowing();
+        List<ConsoleBuffer.Line> items = getItems();
+        if (lines.size() >= maxLines) {
+            items.setAll(lines.subList(lines.size() - maxLines, lines.size()));
+        } else {
+            int overflow = items.size() + lines.size() - maxLines;
+            if (overflow > 0) {
+                items.remove(0, overflow);
+            }
+            items.addAll(lines);
+        }
+        if (following) {
+            scrollTo(items.size() - 1);
+        }
+    }
+
+    // True while nothing or the last line is selected, i.e. the user is not reading back
+    private boolean isFollowing() {
+        int selected = getSelectionModel().getSelectedIndex();
+        return selected < 0 || selected == getItems().size() - 1;
+    }
+
+    final class LineWriter {
+        private final boolean stderr;
+        private final StringBuilder partial = new StringBuilder();
+
+        private LineWriter(boolean stderr) {
+            this.stderr = stderr;
+        }
+
+        void write(CharSequence text) {
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n' || partial.length() + i - start >= MAX_LINE_LENGTH) {
+                    partial.append(text, start, i);
+                    emit();
+                    start = c == '\n' ? i + 1 : i;
+                }
+            }
+            partial.append(text, start, text.length());
+        }
+
+        // Emits the last line even though it has no line break yet
+        void flush() {
+            if (partial.length() > 0) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            int end = partial.length();
+            if (end > 0 && partial.charAt(end - 1) == '\r') {
+                end--;
+            }
+            appendLine(partial.substring(0, end), stderr);
+            partial.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.bitwave.projectflux;
+
+import javafx.scene.control.Tab;
+
+// Whether a document has changes that are not saved: a version counted up on every edit, against
+// the version the last successful save was taken at. Cheaper than comparing text, and a save that
+// finishes after further typing leaves the document dirty. FX thread only.
+final class DirtyState {
+    private long version;
+    private long savedVersion;
+
+    // The tab's state, made the first time. It lives in the tab rather than the editor, which may
+    // be replaced (see TabHibernator).
+    static DirtyState track(Tab tab) {
+        return (DirtyState) tab.getProperties().computeIfAbsent(DirtyState.class, key -> new DirtyState());
+    }
+
+    // Null if the tab's edits are not tracked
+    static DirtyState of(Tab tab) {
+        return (DirtyState) tab.getProperties().get(DirtyState.class);
+    }
+
+    void edited() {
+        version++;
+    }
+
+    // Take this with the text a save writes, and hand it to saved once the save succeeds
+    long version() {
+        return version;
+    }
+
+    void saved(long version) {
+        savedVersion = Math.max(savedVersion, version);
+    }
+
+    boolean isDirty() {
+        return version != savedVersion;
+    }
+}
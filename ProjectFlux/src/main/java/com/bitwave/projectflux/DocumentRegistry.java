@@ -0,0 +1,82 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// The open documents by file, so finding out whether a file is open is a hash lookup rather than
+// a scan of the tabs. Files are keyed by absolute, normalized path, which needs no I/O, and also
+// by their real path, with links resolved and the name cased as on disk, so a file reached
+// through a symbolic link or under another name is still found to be open. The real path names
+// the file rather than its inode, so it stays right when a save replaces the file with a new one.
+// FX thread only.
+final class DocumentRegistry<D> {
+    private final Map<Path, D> byPath = new HashMap<>();
+    private final Map<Path, D> byRealPath = new HashMap<>();
+    private final Map<Path, Path> realPaths = new HashMap<>(); // The real path each path was put with
+
+    // The form paths are kept in. Paths from the project scan and the watcher are already in it.
+    static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    // The document open under exactly this path. No I/O.
+    D get(Path file) {
+        return byPath.get(key(file));
+    }
+
+    // The document open under this path or any other name for the same file. Only resolves the
+    // real path if the path itself is not open.
+    D find(Path file) {
+        D document = get(file);
+        if (document != null || byRealPath.isEmpty()) {
+            return document;
+        }
+        Path realPath = realPath(key(file));
+        return realPath != null ? byRealPath.get(realPath) : null;
+    }
+
+    void put(Path file, D document) {
+        Path key = key(file);
+        remove(key, byPath.get(key));
+        byPath.put(key, document);
+        Path realPath = realPath(key);
+        if (realPath != null) {
+            byRealPath.put(realPath, document);
+            realPaths.put(key, realPath);
+        }
+    }
+
+    // Only if the path is still the document's; another document may have taken it over since
+    void remove(Path file, D document) {
+        Path key = key(file);
+        if (document == null || !byPath.remove(key, document)) {
+            return;
+        }
+        Path realPath = realPaths.remove(key);
+        if (realPath != null) {
+            byRealPath.remove(realPath, document);
+        }
+    }
+
+    Collection<D> documents() {
+        return Collections.unmodifiableCollection(byPath.values());
+    }
+
+    // A file not written yet, as after Save As, is named after the real path of its folder
+    private static Path realPath(Path file) {
+        try {
+            return file.toRealPath();
+        } catch (IOException e) {
+            Path parent = file.getParent();
+            try {
+                return parent != null ? parent.toRealPath().resolve(file.getFileName()) : null;
+            } catch (IOException parentMissing) {
+                return null; // Found by path only
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.bitwave.projectflux;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+// A write-ahead log of the edits to one open document, kept under ~/.projectflux/journal, so
+// unsaved work survives a crash. Edits are queued as they happen and appended in batches a few
+// milliseconds later, forced to disk each time, so the cost follows how much is typed rather than
+// how large the file is. The log starts from a copy of the whole text, written at the first edit
+// after the text was last on disk, and is compacted into a new copy once the edits outgrow it. So
+// it replays whatever happens to the file meanwhile, e.g. a checkout after a crash. A document
+// with no unsaved edits has no log at all.
+// File layout: magic, version, path, a base record (the text itself, or the file on disk if the
+// caller did not compact at the first edit, identified by its length and hash), then
+// edit records: position, length removed, text inserted. Each record ends with a CRC32C of it, so
+// replay stops at a record a crash cut short.
+final class EditJournal {
+    static final Path JOURNAL_DIRECTORY = Path.of(System.getProperty("user.home"), ".projectflux", "journal");
+
+    private static final int MAGIC = 0x50464a4c; // "PFJL"
+    private static final int VERSION = 1;
+    private static final int BASE_FILE = 1;
+    private static final int BASE_TEXT = 2;
+    private static final int EDIT = 3;
+    private static final long FLUSH_DELAY_MILLIS = 20;
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    // One thread writes every journal, so batches of the same document go out in order
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(
+            FluxExecutors.daemonThreads("flux-journal"));
+
+    // Unsaved text found by recover
+    static final class Recovered {
+        final Path file;
+        final String text;
+        final String diskText; // What the file holds now, or null if it is gone
+
+        Recovered(Path file, String text, String diskText) {
+            this.file = file;
+            this.text = text;
+            this.diskText = diskText;
+        }
+    }
+
+    // A new starting point for the log: the file on disk holding text, or text written out in full
+    private static final class Base {
+        final String text;
+        final boolean onDisk;
+
+        Base(String text, boolean onDisk) {
+            this.text = text;
+            this.onDisk = onDisk;
+        }
+    }
+
+    private final Path directory;
+    private final Path file;
+    private final Path journal;
+    // Guarded by this; filled on the FX thread, emptied on WRITER
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Base pendingBase;
+    private boolean scheduled;
+    private boolean closed;
+    // FX thread only
+    private boolean baseOnDisk = true; // No copy of the text written since it was last on disk
+    private long version;
+    private long bytesSinceBase;
+    private long baseLength;
+    // WRITER only
+    private FileChannel channel; // null while there is no log on disk
+    private long diskLength;
+    private int diskHash;
+
+    private EditJournal(Path directory, Path file) {
+        this.directory = directory;
+        this.file = file;
+        this.journal = directory.resolve(FileNames.of(file) + "-" + Integer.toHexString(file.toString().hashCode()) + ".journal");
+    }
+
+    // Starts journaling a document just opened from file, whose text on disk is diskText.
+    // Nothing is written until the first edit.
+    static EditJournal open(Path file, String diskText) {
+        return open(JOURNAL_DIRECTORY, file, diskText);
+    }
+
+    // The same, with the journal kept in directory instead of JOURNAL_DIRECTORY
+    static EditJournal open(Path directory, Path file, String diskText) {
+        EditJournal journal = new EditJournal(directory, file.toAbsolutePath().normalize());
+        journal.baseLength = diskText.length();
+        WRITER.execute(() -> journal.setDiskText(diskText)); // Runs before any flush
+        return journal;
+    }
+
+    // Counts every edit, so a save can tell whether the text changed while it was being written
+    long version() {
+        return version;
+    }
+
+    // Queues one edit: removedLength chars at position replaced by inserted. FX thread only.
+    // Returns true when the caller should compact the log: at the first edit since the text was
+    // last on disk, and when the log has grown enough.
+    boolean record(int position, int removedLength, String inserted) {
+        byte[] text = inserted.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(17 + text.length);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeByte(EDIT);
+            out.writeInt(position);
+            out.writeInt(removedLength);
+            out.writeInt(text.length);
+            out.write(text);
+            out.writeInt(crc(record.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen in memory
+        }
+        version++;
+        bytesSinceBase += record.size();
+        enqueue(record.toByteArray(), null);
+        return baseOnDisk || bytesSinceBase > Math.max(COMPACT_MIN_BYTES, baseLength);
+    }
+
+    // Replaces the log with the current text of the document. FX thread only.
+    void compact(String text) {
+        baseOnDisk = false;
+        bytesSinceBase = 0;
+        baseLength = text.length();
+        enqueue(null, new Base(text, false));
+    }
+
+    // Called once text, taken when version() was version, is safely on disk. If nothing was typed
+    // since, the log is no longer needed. Otherwise it is kept as it is: it does not depend on
+    // the file, so it still replays. FX thread only.
+    void saved(long version, String text) {
+        if (version == this.version) {
+            baseOnDisk = true;
+            bytesSinceBase = 0;
+            baseLength = text.length();
+            enqueue(null, new Base(text, true));
+        }
+    }
+
+    // Deletes the log, e.g. when the document is closed
+    void close() {
+        synchronized (this) {
+            closed = true;
+            pending.reset();
+            pendingBase = null;
+        }
+        WRITER.execute(this::flush);
+    }
+
+    // Waits until every batch queued so far has been written. A task given the same delay as the
+    // flushes runs after all of them that were scheduled before it.
+    static void awaitWrites() throws InterruptedException {
+        try {
+            WRITER.schedule(() -> { }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized void enqueue(byte[] record, Base base) {
+        if (closed) {
+            return;
+        }
+        if (base != null) {
+            pending.reset(); // The new base already holds every edit before it
+            pendingBase = base;
+        }
+        if (record != null) {
+            pending.writeBytes(record);
+        }
+        if (!scheduled) {
+            scheduled = true;
+            WRITER.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // WRITER only: writes out what was queued since the last flush
+    private void flush() {
+        byte[] records;
+        Base base;
+        boolean delete;
+        synchronized (this) {
+            scheduled = false;
+            records = pending.toByteArray();
+            pending.reset();
+            base = pendingBase;
+            pendingBase = null;
+            delete = closed;
+        }
+        try {
+            if (base != null && base.onDisk) {
+                setDiskText(base.text);
+            }
+            if (delete || base != null && base.onDisk && records.length == 0) {
+                deleteJournal(); // Nothing that is not on disk already
+            } else if (base != null || channel == null) {
+                rewrite(base == null || base.onDisk ? null : base.text, records);
+            } else if (records.length > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // The edits are still in the editor, only crash recovery loses them
+        }
+    }
+
+    // WRITER only: what the file on disk holds from now on
+    private void setDiskText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        diskLength = bytes.length;
+        diskHash = crc(bytes);
+    }
+
+    // Starts a new log: the header, the base (text, or the file on disk if null), then records
+    private void rewrite(String text, byte[] records) throws IOException {
+        closeChannel();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, journal.getFileName().toString(), ".tmp");
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(header);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeUTF(file.toString());
+            int start = header.size();
+            if (text == null) {
+                data.writeByte(BASE_FILE);
+                data.writeLong(diskLength);
+                data.writeInt(diskHash);
+            } else {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                data.writeByte(BASE_TEXT);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(header.toByteArray(), start, header.size() - start);
+            data.writeInt((int) crc.getValue());
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(header.toByteArray()), ByteBuffer.wrap(records)}) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void deleteJournal() throws IOException {
+        closeChannel();
+        Files.deleteIfExists(journal);
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Replays every journal left behind by a session that did not close its documents, e.g. after
+    // a crash. Journals whose text matches the file on disk, or that are not journals at all, are
+    // deleted. One based on the file on disk that changed since cannot be replayed, but is kept
+    // rather than lose the edits. Does I/O, so call it off the FX thread.
+    static List<Recovered> recover() {
+        return recover(JOURNAL_DIRECTORY);
+    }
+
+    // The same for the journals kept in directory
+    static List<Recovered> recover(Path directory) {
+        List<Recovered> recovered = new ArrayList<>();
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*.journal")) {
+            for (Path journal : journals) {
+                try {
+                    Recovered document = replay(journal);
+                    if (document != null && !document.text.equals(document.diskText)) {
+                        recovered.add(document);
+                    } else {
+                        Files.deleteIfExists(journal);
+                    }
+                } catch (IOException e) {
+                    System.out.println("Cannot recover " + journal + ": " + e.getMessage());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing was ever journaled
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return recovered;
+    }
+
+    // The text the journal leads to, or null if it is not a journal. Throws if it is based on the
+    // file on disk and that changed since.
+    private static Recovered replay(Path journal) throws IOException {
+        long size = Files.size(journal); // No length read from it can be larger
+        CRC32C crc = new CRC32C();
+        try (DataInputStream raw = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)));
+             DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Path file = Path.of(in.readUTF());
+            byte[] disk = Files.exists(file) ? Files.readAllBytes(file) : null;
+            String diskText = disk == null ? null : new String(disk, StandardCharsets.UTF_8);
+            crc.reset();
+            StringBuilder text;
+            int kind = in.readUnsignedByte();
+            if (kind == BASE_FILE) {
+                long length = in.readLong();
+                int hash = in.readInt();
+                if (!checkRecord(raw, crc)) {
+                    return null;
+                }
+                if (disk == null || disk.length != length || crc(disk) != hash) {
+                    throw new IOException(file + " changed since the edits were journaled; the journal is kept");
+                }
+                text = new StringBuilder(diskText);
+            } else if (kind == BASE_TEXT) {
+                int length = in.readInt();
+                if (length < 0 || length > size) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (!checkRecord(raw, crc)) {
+                    return null;
+                }
+                text = new StringBuilder(new String(bytes, StandardCharsets.UTF_8));
+            } else {
+                return null;
+            }
+
+            try {
+                while (true) {
+                    crc.reset();
+                    if (in.readUnsignedByte() != EDIT) {
+                        break;
+                    }
+                    int position = in.readInt();
+                    int removed = in.readInt();
+                    int length = in.readInt();
+                    if (length < 0 || length > size) {
+                        break;
+                    }
+                    byte[] inserted = new byte[length];
+                    in.readFully(inserted);
+                    if (!checkRecord(raw, crc) || position < 0 || removed < 0 || position + removed > text.length()) {
+                        break; // Cut short by a crash
+                    }
+                    text.replace(position, position + removed, new String(inserted, StandardCharsets.UTF_8));
+                }
+            } catch (EOFException e) {
+                // The end of the log, or the torn record a crash left at the end
+            }
+            return new Recovered(file, text.toString(), diskText);
+        }
+    }
+
+    // Reads the CRC at the end of a record, outside the checksummed stream
+    private static boolean checkRecord(DataInputStream raw, CRC32C crc) throws IOException {
+        int expected = (int) crc.getValue();
+        return raw.readInt() == expected;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,23 @@
+package com.bitwave.projectflux;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Something the terminal is running: an external process, or a program in the warm run JVM
+interface Execution {
+    // Completes with the exit code after all output has been delivered
+    CompletableFuture<Integer> onExit();
+
+    boolean wasKilled();
+
+    void kill();
+
+    // Kills it if it is still running after the given time
+    default void killAfter(long millis) {
+        CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS, FluxExecutors.IO).execute(() -> {
+            if (!onExit().isDone()) {
+                kill();
+            }
+        });
+    }
+}
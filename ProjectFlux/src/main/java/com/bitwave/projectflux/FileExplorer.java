@@ -0,0 +1,18 @@
+package com.bitwave.projectflux;
+
+import javafx.scene.control.TreeView;
+
+import java.nio.file.Path;
+
+// File explorer over a folder, shared by ProjectFluxv4 and v5
+class FileExplorer extends TreeView<String> {
+
+    public FileExplorer(String rootPath) {
+        setRootPath(Path.of(rootPath));
+    }
+
+    public void setRootPath(Path rootPath) {
+        // Folders are listed in the background the first time they are expanded
+        setRoot(new LazyTreeItem<>(rootPath, true, FileNames::of, "Loading..."));
+    }
+}
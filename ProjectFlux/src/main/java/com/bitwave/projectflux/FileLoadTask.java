@@ -0,0 +1,106 @@
+package com.bitwave.projectflux;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Reads a file in large chunks on a background thread and hands the decoded text to the FX
+// thread in a few big batches. CRLF is normalized to LF. At most one batch is waiting on the
+// FX thread at a time, so a slow editor never makes the whole file pile up in memory.
+class FileLoadTask extends Task<Void> {
+    private static final int READ_BUFFER = 256 * 1024;
+    private static final int BATCH_CHARS = 4 * 1024 * 1024;
+
+    private final Path path;
+    private final Consumer<String> sink;
+    private final Semaphore inFlight = new Semaphore(1);
+
+    // The sink is called on the FX thread with each batch, in file order
+    FileLoadTask(Path path, Consumer<String> sink) {
+        this.path = path;
+        this.sink = sink;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER);
+        CharBuffer chars = CharBuffer.allocate(READ_BUFFER);
+
+        long total = Files.size(path);
+        StringBuilder batch = new StringBuilder((int) Math.min(total, BATCH_CHARS) + READ_BUFFER);
+        long read = 0;
+        boolean pendingCr = false;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (!isCancelled()) {
+                int count = channel.read(bytes);
+                boolean eof = count < 0;
+                read += Math.max(count, 0);
+
+                bytes.flip();
+                decoder.decode(bytes, chars, eof);
+                if (eof) {
+                    decoder.flush(chars);
+                }
+                bytes.compact();
+
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    char c = chars.get();
+                    if (pendingCr && c != '\n') {
+                        batch.append('\r');
+                    }
+                    pendingCr = c == '\r';
+                    if (!pendingCr) {
+                        batch.append(c);
+                    }
+                }
+                chars.clear();
+
+                if (eof && pendingCr) {
+                    batch.append('\r');
+                }
+                if (batch.length() >= BATCH_CHARS || (eof && batch.length() > 0)) {
+                    publish(batch.toString());
+                    batch.setLength(0);
+                }
+                updateProgress(read, total);
+                if (eof) {
+                    break;
+                }
+            }
+        }
+
+        // Succeed only once the last batch is in the editor
+        inFlight.acquire();
+        inFlight.release();
+        return null;
+    }
+
+    private void publish(String text) throws InterruptedException {
+        inFlight.acquire();
+        Platform.runLater(() -> {
+            try {
+                if (!isCancelled()) {
+                    sink.accept(text);
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+}
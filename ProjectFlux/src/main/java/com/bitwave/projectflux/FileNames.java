@@ -0,0 +1,16 @@
+package com.bitwave.projectflux;
+
+import java.nio.file.Path;
+
+// File names for display and for naming caches. Kept apart from the UI so the scanner, index
+// and build code need nothing from JavaFX.
+final class FileNames {
+    private FileNames() {
+    }
+
+    // The last name in the path, or the whole path for a root such as C:\ that has none
+    static String of(Path path) {
+        Path name = path.getFileName();
+        return name == null ? path.toString() : name.toString();
+    }
+}
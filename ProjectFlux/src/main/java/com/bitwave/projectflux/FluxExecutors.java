@@ -0,0 +1,28 @@
+package com.bitwave.projectflux;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Shared background pools. All threads are daemons so they never keep the IDE alive after the stage closes.
+final class FluxExecutors {
+    static final ExecutorService COMPUTE = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), daemonThreads("flux-compute"));
+    static final ExecutorService IO = Executors.newCachedThreadPool(daemonThreads("flux-io"));
+    // Directory scans block on the disk, so they get more workers than there are cores
+    static final ForkJoinPool SCAN = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private FluxExecutors() {
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
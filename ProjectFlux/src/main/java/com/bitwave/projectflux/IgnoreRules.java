@@ -0,0 +1,130 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Gitignore-style rules used by project scans. VCS, IDE and build output folders are ignored by
+// default. A .gitignore found while scanning gives a child rule set for that directory, checked
+// before its parent's, and within one file the last matching pattern wins. Immutable.
+final class IgnoreRules {
+    static final List<String> DEFAULT_PATTERNS = List.of(
+            ".git/", ".svn/", ".idea/", ".gradle/", "target/", "build/", "out/", "bin/", "node_modules/");
+    static final IgnoreRules DEFAULT = new IgnoreRules(null, "", parse(DEFAULT_PATTERNS));
+
+    private final IgnoreRules parent;
+    private final String base; // directory the rules were read from, relative to the project, "" or ending in '/'
+    private final Rule[] rules;
+
+    private IgnoreRules(IgnoreRules parent, String base, Rule[] rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+    }
+
+    // Adds the directory's .gitignore on top of these rules, if it has one
+    IgnoreRules forDirectory(Path directory, String relativePath) throws IOException {
+        Path gitignore = directory.resolve(".gitignore");
+        if (!Files.isRegularFile(gitignore)) {
+            return this;
+        }
+        Rule[] parsed = parse(Files.readAllLines(gitignore));
+        if (parsed.length == 0) {
+            return this;
+        }
+        return new IgnoreRules(this, relativePath.isEmpty() ? "" : relativePath + "/", parsed);
+    }
+
+    // relativePath uses '/' separators and is relative to the project root
+    boolean isIgnored(String relativePath, boolean directory) {
+        String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        for (IgnoreRules set = this; set != null; set = set.parent) {
+            String local = relativePath.substring(set.base.length());
+            for (int i = set.rules.length - 1; i >= 0; i--) {
+                Rule rule = set.rules[i];
+                if (rule.matches(rule.anchored ? local : name, directory)) {
+                    return !rule.negated;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Rule[] parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            // A slash anywhere but the end ties the pattern to the .gitignore's directory
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (!pattern.isEmpty()) {
+                rules.add(new Rule(pattern, negated, directoryOnly, anchored));
+            }
+        }
+        return rules.toArray(new Rule[0]);
+    }
+
+    private static final class Rule {
+        final String literal; // set when the pattern has no wildcards, so most rules skip the regex
+        final Pattern glob;
+        final boolean negated;
+        final boolean directoryOnly;
+        final boolean anchored;
+
+        Rule(String pattern, boolean negated, boolean directoryOnly, boolean anchored) {
+            boolean wildcard = pattern.chars().anyMatch(c -> c == '*' || c == '?' || c == '[');
+            this.literal = wildcard ? null : pattern;
+            this.glob = wildcard ? Pattern.compile(toRegex(pattern)) : null;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+        }
+
+        boolean matches(String path, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            return literal != null ? literal.equals(path) : glob.matcher(path).matches();
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    boolean slashFollows = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+                    regex.append(slashFollows ? "(?:.*/)?" : ".*");
+                    i += slashFollows ? 2 : 1;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                    int close = glob.indexOf(']', i + 1);
+                    String set = glob.substring(i + 1, close);
+                    regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                    i = close;
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
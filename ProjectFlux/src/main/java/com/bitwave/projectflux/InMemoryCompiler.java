@@ -0,0 +1,254 @@
+package com.bitwave.projectflux;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Compiles Java in-process with the JDK's own javac. The compiler and its file manager are created
+// once and reused, so after the first build javac is loaded and JIT-compiled and the JDK's classes
+// are already indexed; a build only pays for the compilation itself. Sources are read from open
+// editor buffers where there is one and from disk otherwise, and class files never leave memory.
+// Not thread-safe: one thread at a time per compiler. Single-file builds run on BUILD; a project
+// build gives each module a compiler of its own, and those run at the same time on
+// BuildScheduler.WORKERS.
+final class InMemoryCompiler {
+    static final ExecutorService BUILD = Executors.newSingleThreadExecutor(FluxExecutors.daemonThreads("flux-build"));
+
+    private static final List<String> OPTIONS = List.of("-g", "-proc:none", "-Xlint:deprecation");
+
+    static final class Result {
+        final boolean success;
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        final Map<String, byte[]> classes; // binary name -> class file, this build's output only
+        final Map<String, Path> origins; // binary name -> the source it was compiled from
+        final long millis;
+
+        Result(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, Map<String, byte[]> classes,
+               Map<String, Path> origins, long millis) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.classes = classes;
+            this.origins = origins;
+            this.millis = millis;
+        }
+    }
+
+    private final JavaCompiler compiler;
+    private final StandardJavaFileManager standardManager;
+    private Map<String, byte[]> classes = Map.of(); // The output of the last successful build
+    private Path sourcePath;
+    private Map<Path, Long> libraries = Map.of(); // jar -> modification time when it went on the class path
+
+    // Throws IllegalStateException when the IDE runs on a JRE without javac
+    InMemoryCompiler() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler available, run the IDE on a JDK");
+        }
+        standardManager = compiler.getStandardFileManager(null, Locale.getDefault(), StandardCharsets.UTF_8);
+        try {
+            // Project code only sees the JDK and its libraries, not the IDE's own class path
+            standardManager.setLocationFromPaths(StandardLocation.CLASS_PATH, List.of());
+            standardManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, List.of());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Jars the sources compile against, e.g. a module's Maven dependencies. Only resets the class
+    // path when they change, since javac drops what it has indexed of a location. javac keeps the
+    // jars it has read open, so one replaced in place is only read again once they are closed.
+    void setLibraries(List<Path> libraries) throws IOException {
+        Map<Path, Long> current = new LinkedHashMap<>();
+        for (Path library : libraries) {
+            current.put(library, Files.getLastModifiedTime(library).toMillis());
+        }
+        if (current.equals(this.libraries)) {
+            return;
+        }
+        standardManager.close(); // Still usable, it opens what it needs again
+        standardManager.setLocationFromPaths(StandardLocation.CLASS_PATH, libraries);
+        this.libraries = current;
+    }
+
+    // Compiles sources, taking the text of any path in buffers from there instead of the disk.
+    // sourcePath, if not null, is where javac looks for other classes the sources refer to.
+    Result compile(Collection<Path> sources, Map<Path, String> buffers, Path sourcePath) throws IOException {
+        return compile(sources, buffers, sourcePath, Map.of());
+    }
+
+    // The same, with already compiled classes (binary name -> class file) on the class path, so
+    // only some of a project's sources need to be compiled
+    Result compile(Collection<Path> sources, Map<Path, String> buffers, Path sourcePath, Map<String, byte[]> classPath) throws IOException {
+        long started = System.nanoTime();
+        List<JavaFileObject> units = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            units.add(new SourceFile(source, buffers.get(source)));
+        }
+        if (!Objects.equals(sourcePath, this.sourcePath)) {
+            // Only reset when it changes, since javac drops what it has cached for a location
+            standardManager.setLocationFromPaths(StandardLocation.SOURCE_PATH,
+                    sourcePath == null ? List.of() : List.of(sourcePath));
+            this.sourcePath = sourcePath;
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        MemoryFileManager fileManager = new MemoryFileManager(standardManager, classPath);
+        boolean success = compiler.getTask(null, fileManager, diagnostics, OPTIONS, null, units).call();
+        if (success) {
+            classes = fileManager.output;
+        }
+        return new Result(success, diagnostics.getDiagnostics(), fileManager.output, fileManager.origins,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // The classes of the last successful build. Sources it used from the source path were
+    // compiled along with it, so these are all a run needs, and nothing from earlier builds of
+    // classes since renamed or deleted is left over.
+    Map<String, byte[]> classes() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    // "File.java:12: error: message", the way javac prints it
+    static String format(Diagnostic<? extends JavaFileObject> diagnostic) {
+        String kind = diagnostic.getKind() == Diagnostic.Kind.ERROR ? "error"
+                : diagnostic.getKind().toString().toLowerCase(Locale.ROOT);
+        String message = diagnostic.getMessage(Locale.getDefault());
+        if (diagnostic.getSource() == null) {
+            return kind + ": " + message;
+        }
+        return diagnostic.getSource().getName() + ":" + diagnostic.getLineNumber() + ": " + kind + ": " + message;
+    }
+
+    // A source file whose text comes from an editor buffer if it has one, else from disk
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final Path path;
+        private final String buffer;
+
+        SourceFile(Path path, String buffer) {
+            super(path.toUri(), Kind.SOURCE);
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public String getName() {
+            return path.toString();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            return buffer != null ? buffer : Files.readString(path);
+        }
+    }
+
+    // Collects class files in memory instead of writing them next to the sources, and serves
+    // in-memory classes from the class path
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, byte[]> output = new HashMap<>();
+        final Map<String, Path> origins = new HashMap<>();
+        private final Map<String, List<JavaFileObject>> classPathPackages = new HashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager standardManager, Map<String, byte[]> classPath) {
+            super(standardManager);
+            classPath.forEach((name, bytes) -> {
+                String packageName = name.lastIndexOf('.') < 0 ? "" : name.substring(0, name.lastIndexOf('.'));
+                classPathPackages.computeIfAbsent(packageName, key -> new ArrayList<>()).add(new ClassFile(name, bytes));
+            });
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+            Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+            if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS) || classPathPackages.isEmpty()) {
+                return files;
+            }
+            List<JavaFileObject> merged = new ArrayList<>();
+            files.forEach(merged::add);
+            classPathPackages.forEach((name, classes) -> {
+                if (name.equals(packageName) || recurse && name.startsWith(packageName + ".")) {
+                    merged.addAll(classes);
+                }
+            });
+            return merged;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            return file instanceof ClassFile ? ((ClassFile) file).binaryName : super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return a instanceof ClassFile || b instanceof ClassFile ? a == b : super.isSameFile(a, b);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            if (sibling instanceof SourceFile) {
+                origins.put(className, ((SourceFile) sibling).path);
+            }
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            output.put(className, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+
+        // The standard manager is shared by every build, so closing a task must not close it
+        @Override
+        public void close() {
+        }
+    }
+
+    // A compiled class on the class path
+    private static final class ClassFile extends SimpleJavaFileObject {
+        final String binaryName;
+        private final byte[] bytes;
+
+        ClassFile(String binaryName, byte[] bytes) {
+            super(URI.create("mem:///" + binaryName.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.binaryName = binaryName;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.bitwave.projectflux;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+// Incremental builds of one source root. For every source it remembers a content hash and the
+// classes compiled from it, and for every class its references and ABI hashes (ClassFileInfo).
+// A build compiles the sources whose content changed, with every other class on the in-memory
+// class path, then recompiles the sources that refer to a class whose ABI changed, until nothing
+// else changes. A class whose ABI changed takes its subclasses along, since code calling an
+// inherited member names only the subclass. Class files are cached under ~/.projectflux/build, so the state survives a restart.
+// Not thread-safe: one build at a time. BuildScheduler builds several roots at once on its
+// WORKERS, each with a builder and compiler of its own.
+final class IncrementalBuilder {
+    static final Path CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".projectflux", "build");
+
+    private static final int MAGIC = 0x50464243; // "PFBC"
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    static final class Result {
+        final boolean success;
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        final int compiled; // sources compiled by this build
+        final int sources;
+        final Set<String> abiChanged; // classes whose ABI changed or that are gone, for downstream builds
+        final boolean constantsChanged;
+        final long millis;
+
+        Result(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, int compiled, int sources,
+               Set<String> abiChanged, boolean constantsChanged, long millis) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.compiled = compiled;
+            this.sources = sources;
+            this.abiChanged = abiChanged;
+            this.constantsChanged = constantsChanged;
+            this.millis = millis;
+        }
+    }
+
+    private static final class Source {
+        long size = -1;
+        long lastModified = -1;
+        long hash; // 0 until it compiles, so a source that failed is compiled again
+        List<String> classes = new ArrayList<>();
+    }
+
+    private final Path root;
+    private final InMemoryCompiler compiler;
+    private final Path cacheDirectory;
+    private final Map<Path, Source> sources = new HashMap<>();
+    private final Map<String, byte[]> classes = new HashMap<>();
+    private final Map<String, ClassFileInfo> infos = new HashMap<>();
+    private final Set<String> unsavedClasses = new HashSet<>();
+    private final Set<String> deletedClasses = new HashSet<>();
+    private Map<Path, Long> libraries = new LinkedHashMap<>(); // jar -> modification time, as the classes were compiled
+    private ProjectSnapshot snapshot;
+
+    private IncrementalBuilder(Path root, InMemoryCompiler compiler, Path caches) {
+        this.root = root;
+        this.compiler = compiler;
+        String name = FileNames.of(root).replaceAll("[^A-Za-z0-9._-]", "_");
+        cacheDirectory = caches.resolve(name + "-" + Integer.toHexString(root.toString().hashCode()));
+    }
+
+    // Picks up the cached state of the root if there is one
+    static IncrementalBuilder open(Path root, InMemoryCompiler compiler) {
+        return open(root, compiler, CACHE_DIRECTORY);
+    }
+
+    // The same, with the cache kept under caches instead of CACHE_DIRECTORY
+    static IncrementalBuilder open(Path root, InMemoryCompiler compiler, Path caches) {
+        IncrementalBuilder builder = new IncrementalBuilder(root.toAbsolutePath().normalize(), compiler, caches);
+        builder.load();
+        return builder;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    // Every class of the last successful build of each source
+    Map<String, byte[]> classes() {
+        return classes;
+    }
+
+    // The jars this root compiles against. When they change, or one is replaced in place, every
+    // source compiles again, since any of them may use what changed.
+    void setLibraries(List<Path> jars) throws IOException {
+        Map<Path, Long> current = new LinkedHashMap<>();
+        for (Path jar : jars) {
+            current.put(jar, Files.getLastModifiedTime(jar).toMillis());
+        }
+        compiler.setLibraries(jars);
+        if (!current.equals(libraries)) {
+            libraries = current;
+            for (Source source : sources.values()) {
+                source.hash = 0;
+            }
+        }
+    }
+
+    // Builds what changed since the last build. Sources with an entry in buffers are compiled
+    // from that text instead of the disk.
+    Result build(Map<Path, String> buffers) throws IOException {
+        return build(buffers, Map.of(), Set.of(), false);
+    }
+
+    // The same for a module that depends on others: upstream holds their classes, and upstreamChanged
+    // the classes whose ABI their builds just changed, so the sources here that use them recompile too
+    Result build(Map<Path, String> buffers, Map<String, byte[]> upstream, Set<String> upstreamChanged,
+                 boolean upstreamConstantsChanged) throws IOException {
+        long started = System.nanoTime();
+        snapshot = snapshot == null ? new ParallelProjectScanner().scan(root) : new ParallelProjectScanner().scan(root, snapshot);
+        Set<Path> current = new HashSet<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            // module-info.java is left out: modules are built on the class path, see ModuleGraph
+            if (!snapshot.isDirectory(i) && snapshot.name(i).endsWith(".java") && !snapshot.name(i).equals("module-info.java")) {
+                current.add(snapshot.path(i));
+            }
+        }
+
+        Set<Path> changed = new LinkedHashSet<>();
+        for (Path file : current) {
+            if (isChanged(file, buffers.get(file))) {
+                changed.add(file);
+            }
+        }
+        Set<Path> removed = new HashSet<>(sources.keySet());
+        removed.removeAll(current);
+
+        // What the classes of changed sources looked like before, to see whose ABI changed
+        Map<String, ClassFileInfo> before = new HashMap<>();
+        for (Path file : removed) {
+            dropClasses(sources.remove(file), before);
+        }
+        // Removed classes break the sources that use them, as do upstream changes
+        Set<String> abiChanged = new HashSet<>(before.keySet());
+        Set<String> broken = new HashSet<>(abiChanged);
+        broken.addAll(upstreamChanged);
+        Set<String> inherited = subtypes(broken);
+        broken.addAll(inherited);
+        abiChanged.addAll(inherited);
+        changed.addAll(dependents(current, changed, broken, upstreamConstantsChanged));
+        Set<String> affected = new HashSet<>();
+        boolean constantsChanged = false;
+        boolean anyConstantsChanged = false;
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+        Set<Path> compiled = new HashSet<>();
+        Set<Path> round = changed;
+        while (!round.isEmpty()) {
+            for (Path file : round) {
+                dropClasses(sources.computeIfAbsent(file, key -> new Source()), before);
+            }
+            Map<String, byte[]> classPath = classes;
+            if (!upstream.isEmpty()) {
+                classPath = new HashMap<>(upstream);
+                classPath.putAll(classes);
+            }
+            InMemoryCompiler.Result result = compiler.compile(round, buffers, null, classPath);
+            diagnostics.addAll(result.diagnostics);
+            compiled.addAll(round);
+            if (!result.success) {
+                // The sources stay without classes and hashes, so the next build tries them again
+                save();
+                abiChanged.addAll(before.keySet());
+                return new Result(false, diagnostics, compiled.size(), current.size(), abiChanged, true,
+                        (System.nanoTime() - started) / 1_000_000);
+            }
+
+            for (Map.Entry<String, byte[]> output : result.classes.entrySet()) {
+                String name = output.getKey();
+                ClassFileInfo info = ClassFileInfo.parse(output.getValue());
+                classes.put(name, output.getValue());
+                infos.put(name, info);
+                unsavedClasses.add(name);
+                deletedClasses.remove(name);
+                Path origin = result.origins.get(name);
+                if (origin != null && sources.containsKey(origin)) {
+                    sources.get(origin).classes.add(name);
+                }
+                ClassFileInfo old = before.remove(name);
+                if (old == null || old.abiHash != info.abiHash) {
+                    affected.add(name);
+                } else {
+                    affected.remove(name);
+                }
+                constantsChanged |= old != null && old.constantsHash != info.constantsHash;
+            }
+            for (Path file : round) {
+                Source source = sources.get(file);
+                source.hash = hashOf(file, buffers.get(file), source);
+            }
+            affected.addAll(before.keySet()); // Classes that are gone
+            before.clear();
+            affected.addAll(subtypes(affected));
+
+            round = dependents(current, compiled, affected, constantsChanged);
+            abiChanged.addAll(affected);
+            anyConstantsChanged |= constantsChanged;
+            affected.clear();
+            constantsChanged = false;
+        }
+        save();
+        return new Result(true, diagnostics, compiled.size(), current.size(), abiChanged, anyConstantsChanged,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Size and modification time first, then the content hash if either moved
+    private boolean isChanged(Path file, String buffer) throws IOException {
+        Source source = sources.get(file);
+        if (source == null || source.hash == 0) {
+            return true;
+        }
+        if (buffer == null) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.size() == source.size && attributes.lastModifiedTime().toMillis() == source.lastModified) {
+                return false;
+            }
+        }
+        return hashOf(file, buffer, source) != source.hash;
+    }
+
+    // Also records the file's size and time, or clears them when the text came from a buffer so
+    // the next build looks at the disk again
+    private static long hashOf(Path file, String buffer, Source source) throws IOException {
+        byte[] content;
+        if (buffer != null) {
+            content = buffer.getBytes(StandardCharsets.UTF_8);
+            source.size = -1;
+            source.lastModified = -1;
+        } else {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            content = Files.readAllBytes(file);
+            source.size = attributes.size();
+            source.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return crc.getValue() | 1L << 32;
+    }
+
+    private void dropClasses(Source source, Map<String, ClassFileInfo> before) {
+        if (source == null) {
+            return;
+        }
+        for (String name : source.classes) {
+            ClassFileInfo info = infos.remove(name);
+            if (info != null) {
+                before.put(name, info);
+            }
+            classes.remove(name);
+            unsavedClasses.remove(name);
+            deletedClasses.add(name);
+        }
+        source.classes = new ArrayList<>();
+        source.hash = 0;
+    }
+
+    // Sources not compiled yet that use one of the classes. A changed constant may have been
+    // inlined anywhere without a trace in the class file, so then it is every one of them.
+    private Set<Path> dependents(Set<Path> current, Set<Path> compiled, Set<String> classNames, boolean constantsChanged) {
+        Set<Path> dependents = new LinkedHashSet<>();
+        for (Path file : current) {
+            if (!compiled.contains(file) && (constantsChanged || refersTo(sources.get(file), classNames))) {
+                dependents.add(file);
+            }
+        }
+        return dependents;
+    }
+
+    // Every class here that extends or implements one of the classes, directly or further down
+    private Set<String> subtypes(Set<String> classNames) {
+        Set<String> subtypes = new HashSet<>();
+        if (classNames.isEmpty()) {
+            return subtypes;
+        }
+        Map<String, List<String>> direct = new HashMap<>();
+        for (ClassFileInfo info : infos.values()) {
+            for (String supertype : info.supertypes) {
+                direct.computeIfAbsent(supertype, key -> new ArrayList<>()).add(info.name);
+            }
+        }
+        List<String> pending = new ArrayList<>(classNames);
+        while (!pending.isEmpty()) {
+            List<String> subclasses = direct.get(pending.remove(pending.size() - 1));
+            if (subclasses == null) {
+                continue;
+            }
+            for (String subclass : subclasses) {
+                if (!classNames.contains(subclass) && subtypes.add(subclass)) {
+                    pending.add(subclass);
+                }
+            }
+        }
+        return subtypes;
+    }
+
+    private boolean refersTo(Source source, Set<String> names) {
+        if (names.isEmpty()) {
+            return false;
+        }
+        for (String name : source.classes) {
+            for (String reference : infos.get(name).references) {
+                if (names.contains(reference)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Only classes compiled or deleted since the last save touch the disk, plus a small manifest
+    // of sources, hashes and class names written to a temp file and moved into place
+    private void save() {
+        try {
+            Path classDirectory = cacheDirectory.resolve("classes");
+            Files.createDirectories(classDirectory);
+            for (String name : deletedClasses) {
+                Files.deleteIfExists(classDirectory.resolve(name + ".class"));
+            }
+            for (String name : unsavedClasses) {
+                Files.write(classDirectory.resolve(name + ".class"), classes.get(name));
+            }
+            deletedClasses.clear();
+            unsavedClasses.clear();
+
+            Path manifest = cacheDirectory.resolve("manifest");
+            Path temp = Files.createTempFile(cacheDirectory, "manifest", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(root.toString());
+                out.writeUTF(Runtime.version().toString()); // Class files from another JDK are not reused
+                out.writeInt(libraries.size());
+                for (Map.Entry<Path, Long> library : libraries.entrySet()) {
+                    out.writeUTF(library.getKey().toString());
+                    out.writeLong(library.getValue());
+                }
+                out.writeInt(sources.size());
+                for (Map.Entry<Path, Source> entry : sources.entrySet()) {
+                    Source source = entry.getValue();
+                    out.writeUTF(root.relativize(entry.getKey()).toString());
+                    out.writeLong(source.size);
+                    out.writeLong(source.lastModified);
+                    out.writeLong(source.hash);
+                    out.writeInt(source.classes.size());
+                    for (String name : source.classes) {
+                        out.writeUTF(name);
+                    }
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace(); // The build itself worked, the next start just compiles more
+        }
+    }
+
+    private void load() {
+        Path manifest = cacheDirectory.resolve("manifest");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())
+                    || !in.readUTF().equals(Runtime.version().toString())) {
+                return;
+            }
+            int libraryCount = in.readInt();
+            for (int i = 0; i < libraryCount; i++) {
+                libraries.put(Path.of(in.readUTF()), in.readLong());
+            }
+            Path classDirectory = cacheDirectory.resolve("classes");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Source source = new Source();
+                Path file = root.resolve(in.readUTF());
+                source.size = in.readLong();
+                source.lastModified = in.readLong();
+                source.hash = in.readLong();
+                int classCount = in.readInt();
+                for (int k = 0; k < classCount; k++) {
+                    String name = in.readUTF();
+                    try {
+                        byte[] bytes = Files.readAllBytes(classDirectory.resolve(name + ".class"));
+                        infos.put(name, ClassFileInfo.parse(bytes));
+                        classes.put(name, bytes);
+                        source.classes.add(name);
+                    } catch (IOException e) {
+                        source.hash = 0; // A class went missing, so compile its source again
+                    }
+                }
+                sources.put(file, source);
+            }
+        } catch (NoSuchFileException e) {
+            // First build of this root
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable build cache " + manifest + ": " + e);
+            sources.clear();
+            classes.clear();
+            infos.clear();
+            libraries.clear();
+        }
+    }
+}
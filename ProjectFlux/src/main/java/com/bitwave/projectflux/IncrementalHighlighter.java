@@ -0,0 +1,170 @@
+package com.bitwave.projectflux;
+
+import javafx.util.Duration;
+import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+
+// Keeps the lexer state at the start of every paragraph and, on each edit, re-lexes
+// from the first changed paragraph until the state lines up with the old one again.
+// Large pastes and long cascades (e.g. opening a block comment) are handed to a
+// background pass over a snapshot instead of blocking the FX thread.
+class IncrementalHighlighter {
+    private static final int UNKNOWN = -1;
+    private static final int ASYNC_INSERT_THRESHOLD = 16 * 1024;
+    private static final int SYNC_PARAGRAPH_LIMIT = 2000;
+    private static final Duration ASYNC_DELAY = Duration.millis(150);
+
+    private final StyleClassedTextArea area;
+    private final JavaLexer lexer;
+    private final AsyncHighlighter<FullLex> fullLex;
+
+    private int[] lineStates = new int[64];
+    private int lineCount;
+    private boolean suspended;
+
+    IncrementalHighlighter(StyleClassedTextArea area, JavaLexer lexer) {
+        this.area = area;
+        this.lexer = lexer;
+        fullLex = new AsyncHighlighter<>(area::getText, text -> lexAll(lexer, text), this::applyAll, ASYNC_DELAY);
+        lineCount = area.getParagraphs().size();
+        area.plainTextChanges().subscribe(this::onTextChange);
+        rehighlightAll();
+    }
+
+    void rehighlightAll() {
+        fullLex.runNow();
+    }
+
+    // While suspended, edits only keep the paragraph bookkeeping in step; resuming runs one full pass
+    void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+        if (!suspended) {
+            rehighlightAll();
+        }
+    }
+
+    // True while a full pass is scheduled or running, i.e. the styles may not match the text yet
+    boolean isPending() {
+        return fullLex.isPending();
+    }
+
+    private void onTextChange(PlainTextChange change) {
+        int firstParagraph = area.offsetToPosition(change.getPosition(), Bias.Backward).getMajor();
+        int removedLines = countLines(change.getRemoved());
+        int insertedLines = countLines(change.getInserted());
+
+        replaceStates(firstParagraph + 1, removedLines, insertedLines);
+        if (suspended) {
+            fullLex.cancel();
+            return;
+        }
+        if (fullLex.isPending() || change.getInserted().length() > ASYNC_INSERT_THRESHOLD) {
+            // States past this point are stale until the background pass lands
+            fullLex.schedule();
+            return;
+        }
+        relex(firstParagraph, firstParagraph + insertedLines);
+    }
+
+    // Re-lexes from firstParagraph and stops at the first paragraph past lastChanged whose
+    // incoming state is unchanged, so everything after it keeps its existing styles
+    private void relex(int firstParagraph, int lastChanged) {
+        int paragraphs = area.getParagraphs().size();
+        SpanCollector collector = new SpanCollector();
+        int state = lineStates[firstParagraph];
+
+        for (int p = firstParagraph; p < paragraphs; p++) {
+            if (p > lastChanged && lineStates[p] == state) {
+                break;
+            }
+            if (p - firstParagraph > SYNC_PARAGRAPH_LIMIT) {
+                fullLex.schedule();
+                break;
+            }
+            lineStates[p] = state;
+            if (p > firstParagraph) {
+                collector.newline();
+            }
+            String text = area.getText(p);
+            collector.startParagraph();
+            state = lexer.lex(text, 0, text.length(), state, collector);
+            collector.endParagraph(text.length());
+        }
+
+        area.setStyleSpans(area.getAbsolutePosition(firstParagraph, 0), collector.create());
+    }
+
+    // Runs on a background thread over a snapshot of the whole document. Gives up once the
+    // thread is interrupted, i.e. the pass was cancelled.
+    static FullLex lexAll(JavaLexer lexer, String text) {
+        SpanCollector collector = new SpanCollector();
+        int[] states = new int[64];
+        int count = 0;
+        int state = JavaLexer.STATE_DEFAULT;
+
+        int lineStart = 0;
+        while (true) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            int end = lineEnd < 0 ? text.length() : lineEnd;
+            if (count == states.length) {
+                states = Arrays.copyOf(states, count * 2);
+            }
+            if ((count & 255) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            states[count++] = state;
+            state = lexer.lex(text, lineStart, end, state, collector);
+            collector.fillTo(end);
+            if (lineEnd < 0) {
+                break;
+            }
+            collector.newline();
+            lineStart = lineEnd + 1;
+        }
+        return new FullLex(collector.create(), states, count);
+    }
+
+    private void applyAll(FullLex result) {
+        lineStates = result.states;
+        lineCount = result.count;
+        area.setStyleSpans(0, result.spans);
+    }
+
+    private void replaceStates(int at, int removed, int inserted) {
+        int newCount = lineCount - removed + inserted;
+        if (newCount > lineStates.length) {
+            lineStates = Arrays.copyOf(lineStates, Math.max(newCount, lineStates.length * 2));
+        }
+        System.arraycopy(lineStates, at + removed, lineStates, at + inserted, lineCount - at - removed);
+        Arrays.fill(lineStates, at, at + inserted, UNKNOWN);
+        lineCount = newCount;
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    static final class FullLex {
+        final StyleSpans<Collection<String>> spans;
+        final int[] states;
+        final int count;
+
+        FullLex(StyleSpans<Collection<String>> spans, int[] states, int count) {
+            this.spans = spans;
+            this.states = states;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.bitwave.projectflux;
+
+import java.util.Arrays;
+
+// Single-pass, table-driven Java scanner. Every character is looked at once and no
+// token ever backtracks. It can be run over a single paragraph at a time: the returned
+// state is fed into the next call so block comments and text blocks continue across lines.
+class JavaLexer {
+    static final int STATE_DEFAULT = 0;
+    static final int STATE_BLOCK_COMMENT = 1;
+    static final int STATE_TEXT_BLOCK = 2;
+
+    static final int KEYWORD = 1;
+    static final int COMMENT = 2;
+    static final int STRING = 3;
+    static final int NUMBER = 4;
+    static final int OPERATOR = 5;
+    static final int ANNOTATION = 6;
+
+    static final String[] STYLE_CLASSES = {null, "keyword", "comment", "string", "number", "operator", "annotation"};
+
+    static final String[] JAVA_KEYWORDS = {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+            "var", "record", "yield", "true", "false", "null"
+    };
+
+    interface TokenSink {
+        void token(int start, int length, int style);
+    }
+
+    // Character classes for the ASCII range; anything above falls back to Character.isJavaIdentifier*
+    private static final byte OTHER = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte SLASH = 3;
+    private static final byte QUOTE = 4;
+    private static final byte OPERATOR_CHAR = 5;
+    private static final byte AT = 6;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = IDENTIFIER;
+            CHAR_CLASS[Character.toUpperCase(c)] = IDENTIFIER;
+        }
+        CHAR_CLASS['_'] = IDENTIFIER;
+        CHAR_CLASS['$'] = IDENTIFIER;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = DIGIT;
+        }
+        CHAR_CLASS['/'] = SLASH;
+        CHAR_CLASS['"'] = QUOTE;
+        CHAR_CLASS['\''] = QUOTE;
+        for (char c : "=+-*&|!<>".toCharArray()) {
+            CHAR_CLASS[c] = OPERATOR_CHAR;
+        }
+        CHAR_CLASS['@'] = AT;
+    }
+
+    // Keywords bucketed by first character so lookups never allocate a substring
+    private final char[][][] keywordsByFirstChar = new char[128][][];
+
+    JavaLexer() {
+        this(JAVA_KEYWORDS);
+    }
+
+    JavaLexer(String... keywords) {
+        for (String keyword : keywords) {
+            char first = keyword.charAt(0);
+            char[][] bucket = keywordsByFirstChar[first];
+            char[][] grown = bucket == null ? new char[1][] : Arrays.copyOf(bucket, bucket.length + 1);
+            grown[grown.length - 1] = keyword.toCharArray();
+            keywordsByFirstChar[first] = grown;
+        }
+    }
+
+    int lex(CharSequence text, int from, int to, int state, TokenSink sink) {
+        int i = from;
+        if (state == STATE_BLOCK_COMMENT) {
+            int end = blockCommentEnd(text, i, to);
+            if (end < 0) {
+                emit(sink, i, to, COMMENT);
+                return STATE_BLOCK_COMMENT;
+            }
+            emit(sink, i, end, COMMENT);
+            i = end;
+        } else if (state == STATE_TEXT_BLOCK) {
+            int end = textBlockEnd(text, i, to);
+            if (end < 0) {
+                emit(sink, i, to, STRING);
+                return STATE_TEXT_BLOCK;
+            }
+            emit(sink, i, end, STRING);
+            i = end;
+        }
+
+        while (i < to) {
+            char c = text.charAt(i);
+            byte charClass = c < 128 ? CHAR_CLASS[c] : (Character.isJavaIdentifierStart(c) ? IDENTIFIER : OTHER);
+            int end;
+            switch (charClass) {
+                case IDENTIFIER:
+                    end = identifierEnd(text, i + 1, to);
+                    if (isKeyword(text, i, end)) {
+                        sink.token(i, end - i, KEYWORD);
+                    }
+                    i = end;
+                    break;
+                case DIGIT:
+                    end = numberEnd(text, i + 1, to);
+                    sink.token(i, end - i, NUMBER);
+                    i = end;
+                    break;
+                case SLASH:
+                    char next = i + 1 < to ? text.charAt(i + 1) : 0;
+                    if (next == '/') {
+                        end = lineEnd(text, i, to);
+                        sink.token(i, end - i, COMMENT);
+                        i = end;
+                    } else if (next == '*') {
+                        end = blockCommentEnd(text, i + 2, to);
+                        if (end < 0) {
+                            emit(sink, i, to, COMMENT);
+                            return STATE_BLOCK_COMMENT;
+                        }
+                        sink.token(i, end - i, COMMENT);
+                        i = end;
+                    } else {
+                        i = operator(text, i, to, sink);
+                    }
+                    break;
+                case QUOTE:
+                    if (c == '"' && i + 2 < to && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                        end = textBlockEnd(text, i + 3, to);
+                        if (end < 0) {
+                            emit(sink, i, to, STRING);
+                            return STATE_TEXT_BLOCK;
+                        }
+                    } else {
+                        end = quotedEnd(text, i + 1, to, c);
+                    }
+                    sink.token(i, end - i, STRING);
+                    i = end;
+                    break;
+                case OPERATOR_CHAR:
+                    i = operator(text, i, to, sink);
+                    break;
+                case AT:
+                    end = identifierEnd(text, i + 1, to);
+                    if (end > i + 1) {
+                        sink.token(i, end - i, ANNOTATION);
+                    }
+                    i = end;
+                    break;
+                default:
+                    i++;
+            }
+        }
+        return STATE_DEFAULT;
+    }
+
+    // One operator character, optionally followed by '='
+    private static int operator(CharSequence text, int i, int to, TokenSink sink) {
+        int end = i + 1 < to && text.charAt(i + 1) == '=' ? i + 2 : i + 1;
+        sink.token(i, end - i, OPERATOR);
+        return end;
+    }
+
+    private boolean isKeyword(CharSequence text, int start, int end) {
+        char first = text.charAt(start);
+        if (first >= 128 || keywordsByFirstChar[first] == null) {
+            return false;
+        }
+        int length = end - start;
+        for (char[] keyword : keywordsByFirstChar[first]) {
+            if (keyword.length == length && regionEquals(text, start, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, char[] word) {
+        for (int k = 1; k < word.length; k++) {
+            if (text.charAt(start + k) != word[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void emit(TokenSink sink, int start, int end, int style) {
+        if (end > start) {
+            sink.token(start, end - start, style);
+        }
+    }
+
+    private static int identifierEnd(CharSequence text, int i, int to) {
+        while (i < to) {
+            char c = text.charAt(i);
+            byte charClass = c < 128 ? CHAR_CLASS[c] : OTHER;
+            if (charClass != IDENTIFIER && charClass != DIGIT && (c < 128 || !Character.isJavaIdentifierPart(c))) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    // Digits, an optional fraction and any suffix/hex/underscore characters, e.g. 0x1F, 1_000L, 2.5f
+    private static int numberEnd(CharSequence text, int i, int to) {
+        i = identifierEnd(text, i, to);
+        if (i + 1 < to && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+            i = identifierEnd(text, i + 1, to);
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int lineEnd(CharSequence text, int i, int to) {
+        while (i < to && text.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    // Returns the offset just past the closing quote, or the end of the line if unterminated
+    private static int quotedEnd(CharSequence text, int i, int to, char quote) {
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return to;
+    }
+
+    // Returns the offset just past the closing """, or -1 if the block continues
+    private static int textBlockEnd(CharSequence text, int i, int to) {
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"' && i + 2 < to && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                return i + 3;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the offset just past the closing */, or -1 if the comment continues
+    private static int blockCommentEnd(CharSequence text, int i, int to) {
+        for (; i + 1 < to; i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+}
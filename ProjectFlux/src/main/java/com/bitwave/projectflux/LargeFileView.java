@@ -0,0 +1,47 @@
+package com.bitwave.projectflux;
+
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.ListView;
+import javafx.scene.control.cell.TextFieldListCell;
+
+// Line-by-line editor for a PieceTable. ListView is virtualized, so only the lines that are
+// on screen are ever decoded into Strings; editing a cell replaces that line in the table.
+class LargeFileView extends ListView<String> {
+    private final PieceTable document;
+
+    LargeFileView(PieceTable document) {
+        this.document = document;
+        setItems(new LineList());
+        setEditable(true);
+        setFixedCellSize(20); // Skips measuring rows, which matters with millions of them
+        setCellFactory(TextFieldListCell.forListView());
+        getStyleClass().add("code-editor");
+    }
+
+    PieceTable getDocument() {
+        return document;
+    }
+
+    private final class LineList extends ObservableListBase<String> {
+        @Override
+        public String get(int index) {
+            return document.getLine(index);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(document.lineCount(), Integer.MAX_VALUE);
+        }
+
+        // Called by the default edit commit handler of the ListView
+        @Override
+        public String set(int index, String line) {
+            String old = document.getLine(index);
+            document.replaceLine(index, line);
+            beginChange();
+            nextSet(index, old);
+            endChange();
+            return old;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.bitwave.projectflux;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.TreeItem;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Tree item for a file system path. A directory lists its children only when it is first
+// expanded, on a background thread, showing a placeholder child until the listing arrives.
+class LazyTreeItem<T> extends TreeItem<T> {
+    private final Path path;
+    private final boolean directory;
+    private final Function<Path, T> valueFactory;
+    private final T placeholder;
+    private final BiFunction<Path, Boolean, Node> graphicFactory;
+    private boolean loadRequested;
+    private boolean listing;
+    private boolean relistRequested;
+
+    LazyTreeItem(Path path, boolean directory, Function<Path, T> valueFactory, T placeholder) {
+        this(path, directory, valueFactory, placeholder, null);
+    }
+
+    // graphicFactory gets the path and whether it is a directory, and may return null
+    LazyTreeItem(Path path, boolean directory, Function<Path, T> valueFactory, T placeholder,
+                 BiFunction<Path, Boolean, Node> graphicFactory) {
+        super(valueFactory.apply(path));
+        this.path = path;
+        this.directory = directory;
+        this.valueFactory = valueFactory;
+        this.placeholder = placeholder;
+        this.graphicFactory = graphicFactory;
+
+        if (graphicFactory != null) {
+            setGraphic(graphicFactory.apply(path, directory));
+        }
+        if (directory) {
+            // The placeholder gives the item an expand arrow before anything has been listed
+            getChildren().add(new TreeItem<>(placeholder));
+            expandedProperty().addListener((obs, wasExpanded, expanded) -> {
+                if (expanded) {
+                    load();
+                }
+            });
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return !directory;
+    }
+
+    private void load() {
+        if (loadRequested) {
+            return;
+        }
+        loadRequested = true;
+        list();
+    }
+
+    private void list() {
+        listing = true;
+        FluxExecutors.IO.execute(() -> {
+            List<TreeItem<T>> children = listChildren();
+            Platform.runLater(() -> applyListing(children));
+        });
+    }
+
+    private void applyListing(List<TreeItem<T>> listed) {
+        // Entries that are still there keep their item, and with it their expanded state
+        Map<Path, LazyTreeItem<T>> existing = childrenByPath();
+        listed.replaceAll(item -> existing.getOrDefault(((LazyTreeItem<T>) item).path, (LazyTreeItem<T>) item));
+        getChildren().setAll(listed);
+        listing = false;
+        if (relistRequested) {
+            relistRequested = false;
+            list();
+        }
+    }
+
+    // Lists a directory again in the background. One that was never expanded is left alone.
+    void refresh() {
+        if (listing) {
+            relistRequested = true;
+        } else if (loadRequested) {
+            list();
+        }
+    }
+
+    // Applies a batch from a ProjectWatcher to the listed part of the tree, with one update per
+    // directory. Directories that were never expanded are skipped; they are listed when expanded.
+    void applyChanges(List<ProjectWatcher.Change> changes) {
+        Map<Path, List<ProjectWatcher.Change>> byDirectory = new LinkedHashMap<>();
+        for (ProjectWatcher.Change change : changes) {
+            Path directory = change.kind == ProjectWatcher.Kind.RESCAN ? change.path : change.path.getParent();
+            byDirectory.computeIfAbsent(directory, key -> new ArrayList<>()).add(change);
+        }
+        byDirectory.forEach((directory, directoryChanges) -> {
+            LazyTreeItem<T> item = findListed(directory);
+            if (item != null) {
+                item.applyToChildren(directoryChanges);
+            }
+        });
+    }
+
+    private LazyTreeItem<T> findListed(Path target) {
+        if (!target.startsWith(path)) {
+            return null;
+        }
+        LazyTreeItem<T> item = this;
+        while (item != null && item.loadRequested && !item.path.equals(target)) {
+            item = item.childrenByPath().get(item.path.resolve(item.path.relativize(target).getName(0)));
+        }
+        return item != null && item.loadRequested ? item : null;
+    }
+
+    private void applyToChildren(List<ProjectWatcher.Change> changes) {
+        if (listing) {
+            relistRequested = true; // The listing in flight may predate these changes
+            return;
+        }
+        Map<Path, LazyTreeItem<T>> children = childrenByPath();
+        Set<TreeItem<T>> removed = new HashSet<>();
+        List<TreeItem<T>> added = new ArrayList<>();
+        boolean rescan = false;
+        for (ProjectWatcher.Change change : changes) {
+            LazyTreeItem<T> child = children.get(change.path);
+            switch (change.kind) {
+                case CREATED:
+                case MODIFIED:
+                    // A modified path only matters to the tree if a file became a folder or back
+                    if (child == null || child.directory != change.directory) {
+                        if (child != null) {
+                            removed.add(child);
+                        }
+                        LazyTreeItem<T> item = new LazyTreeItem<>(change.path, change.directory, valueFactory, placeholder, graphicFactory);
+                        children.put(change.path, item);
+                        added.add(item);
+                    }
+                    break;
+                case DELETED:
+                    if (child != null) {
+                        removed.add(child);
+                        children.remove(change.path);
+                    }
+                    break;
+                case RESCAN:
+                    rescan = true;
+                    break;
+            }
+        }
+        if (!removed.isEmpty()) {
+            getChildren().removeAll(removed);
+        }
+        if (!added.isEmpty()) {
+            getChildren().addAll(added);
+        }
+        if (rescan) {
+            refresh();
+        }
+    }
+
+    private Map<Path, LazyTreeItem<T>> childrenByPath() {
+        Map<Path, LazyTreeItem<T>> children = new LinkedHashMap<>();
+        for (TreeItem<T> child : getChildren()) {
+            if (child instanceof LazyTreeItem) {
+                LazyTreeItem<T> item = (LazyTreeItem<T>) child;
+                children.put(item.path, item);
+            }
+        }
+        return children;
+    }
+
+    // Lists one level. Safe to call off the FX thread since the items are not attached yet.
+    List<TreeItem<T>> listChildren() {
+        List<TreeItem<T>> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path entry : stream) {
+                children.add(new LazyTreeItem<>(entry, Files.isDirectory(entry), valueFactory, placeholder, graphicFactory));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return children;
+    }
+}
@@ -0,0 +1,288 @@
+package com.bitwave.projectflux;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The modules of a project and what each one depends on. A Maven module is a folder with a
+// pom.xml and a src/main/java; its dependencies are the other modules its pom lists. A folder
+// with a module-info.java is a module too, depending on the modules it requires. A Maven module
+// with a module-info.java is one module with both sets of dependencies. A project with neither
+// is a single module over the whole folder. Dependencies a pom lists that are not modules of the
+// project are looked up as jars in the local Maven repository. Only the jars the pom names are
+// found this way, not what those jars depend on in turn.
+final class ModuleGraph {
+    static final Path MAVEN_REPOSITORY = Path.of(System.getProperty("user.home"), ".m2", "repository");
+
+    private static final Pattern MODULE_NAME = Pattern.compile("\\bmodule\\s+([\\w.]+)\\s*\\{");
+    private static final Pattern REQUIRES = Pattern.compile("\\brequires\\s+(?:(?:transitive|static)\\s+)*([\\w.]+)\\s*;");
+    private static final Pattern COMMENT = Pattern.compile("//[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+
+    static final class Module {
+        final String name;
+        final Path sourceRoot;
+        final List<Module> dependencies = new ArrayList<>();
+        final List<Path> libraries = new ArrayList<>(); // Jars from the Maven repository
+        final List<String> missingLibraries = new ArrayList<>(); // groupId:artifactId:version not found there
+        // Keys other modules may refer to this one by: groupId:artifactId and/or the JPMS name
+        private final Set<String> keys = new LinkedHashSet<>();
+        private final Set<String> requires = new LinkedHashSet<>();
+        private final Map<String, String> versions = new HashMap<>(); // groupId:artifactId -> version, null if not given
+
+        Module(String name, Path sourceRoot) {
+            this.name = name;
+            this.sourceRoot = sourceRoot;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Module> modules; // Dependencies before dependents
+
+    private ModuleGraph(List<Module> modules) {
+        this.modules = modules;
+    }
+
+    List<Module> modules() {
+        return modules;
+    }
+
+    // Throws IOException when the modules depend on each other in a cycle
+    static ModuleGraph discover(ProjectSnapshot snapshot) throws IOException {
+        return discover(snapshot, MAVEN_REPOSITORY);
+    }
+
+    // The same, with jars looked up in repository instead of MAVEN_REPOSITORY
+    static ModuleGraph discover(ProjectSnapshot snapshot, Path repository) throws IOException {
+        Map<Path, Module> bySourceRoot = new HashMap<>();
+        List<Module> found = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.isDirectory(i) || !snapshot.name(i).equals("pom.xml")) {
+                continue;
+            }
+            Path directory = snapshot.path(i).getParent();
+            Path sourceRoot = directory.resolve("src/main/java");
+            if (Files.isDirectory(sourceRoot)) {
+                Module module = readPom(snapshot.path(i), sourceRoot);
+                bySourceRoot.put(sourceRoot, module);
+                found.add(module);
+            }
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.isDirectory(i) || !snapshot.name(i).equals("module-info.java")) {
+                continue;
+            }
+            Path sourceRoot = snapshot.path(i).getParent();
+            String text = COMMENT.matcher(Files.readString(snapshot.path(i))).replaceAll(" ");
+            Matcher name = MODULE_NAME.matcher(text);
+            if (!name.find()) {
+                continue;
+            }
+            Module module = bySourceRoot.get(sourceRoot);
+            if (module == null) {
+                module = new Module(name.group(1), sourceRoot);
+                bySourceRoot.put(sourceRoot, module);
+                found.add(module);
+            }
+            module.keys.add(name.group(1));
+            for (Matcher requires = REQUIRES.matcher(text); requires.find(); ) {
+                module.requires.add(requires.group(1));
+            }
+        }
+        if (found.isEmpty()) {
+            found.add(new Module(FileNames.of(snapshot.root()), snapshot.root()));
+        }
+
+        Map<String, Module> byKey = new HashMap<>();
+        for (Module module : found) {
+            module.keys.forEach(key -> byKey.put(key, module));
+        }
+        for (Module module : found) {
+            for (String key : module.requires) {
+                Module dependency = byKey.get(key);
+                if (dependency != null && dependency != module && !module.dependencies.contains(dependency)) {
+                    module.dependencies.add(dependency);
+                } else if (dependency == null && module.versions.containsKey(key)) {
+                    resolveLibrary(module, key, repository); // A JPMS module from outside the project is the JDK's
+                }
+            }
+        }
+        return new ModuleGraph(topologicalOrder(found));
+    }
+
+    // The longest chain of dependencies by the given durations: the shortest a build can take however
+    // many modules run at once. Modules missing from durations count as zero.
+    List<Module> criticalPath(Map<Module, Long> durations) {
+        Map<Module, Long> finish = new HashMap<>();
+        Map<Module, Module> slowestDependency = new HashMap<>();
+        Module last = null;
+        for (Module module : modules) {
+            long start = 0;
+            for (Module dependency : module.dependencies) {
+                if (!slowestDependency.containsKey(module) || finish.get(dependency) > start) {
+                    start = finish.get(dependency);
+                    slowestDependency.put(module, dependency);
+                }
+            }
+            finish.put(module, start + durations.getOrDefault(module, 0L));
+            if (last == null || finish.get(module) > finish.get(last)) {
+                last = module;
+            }
+        }
+        Deque<Module> path = new ArrayDeque<>();
+        for (Module module = last; module != null; module = slowestDependency.get(module)) {
+            path.addFirst(module);
+        }
+        return new ArrayList<>(path);
+    }
+
+    // groupId/artifactId/version/artifactId-version.jar, the way Maven lays out its repository
+    private static void resolveLibrary(Module module, String key, Path repository) {
+        String version = module.versions.get(key);
+        String[] parts = key.split(":");
+        if (version != null && !PROPERTY.matcher(version).find()) {
+            Path jar = repository.resolve(parts[0].replace('.', '/')).resolve(parts[1]).resolve(version)
+                    .resolve(parts[1] + "-" + version + ".jar");
+            if (Files.isRegularFile(jar)) {
+                module.libraries.add(jar);
+                return;
+            }
+        }
+        module.missingLibraries.add(key + ":" + (version != null ? version : "?"));
+    }
+
+    private static Module readPom(Path pom, Path sourceRoot) throws IOException {
+        Element project;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(pom.toFile());
+            project = document.getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Cannot read " + pom + ": " + e.getMessage(), e);
+        }
+        String artifactId = childText(project, "artifactId");
+        String groupId = childText(project, "groupId");
+        Element parent = child(project, "parent");
+        if (groupId == null && parent != null) {
+            groupId = childText(parent, "groupId"); // Inherited from the parent
+        }
+        String version = childText(project, "version");
+        if (version == null && parent != null) {
+            version = childText(parent, "version");
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put("project.version", version);
+        properties.put("project.groupId", groupId);
+        Element propertyList = child(project, "properties");
+        if (propertyList != null) {
+            for (Node node = propertyList.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element) {
+                    properties.put(node.getNodeName(), node.getTextContent().trim());
+                }
+            }
+        }
+        Module module = new Module(artifactId != null ? artifactId : FileNames.of(pom.getParent()), sourceRoot);
+        module.keys.add(groupId + ":" + artifactId);
+        Element dependencies = child(project, "dependencies");
+        if (dependencies != null) {
+            for (Node node = dependencies.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element && node.getNodeName().equals("dependency")) {
+                    Element dependency = (Element) node;
+                    // Test dependencies are not needed for src/main/java, nor poms that only import others
+                    if ("test".equals(childText(dependency, "scope")) || "pom".equals(childText(dependency, "type"))) {
+                        continue;
+                    }
+                    String key = expand(childText(dependency, "groupId"), properties) + ":" + childText(dependency, "artifactId");
+                    module.requires.add(key);
+                    module.versions.put(key, expand(childText(dependency, "version"), properties));
+                }
+            }
+        }
+        return module;
+    }
+
+    // Fills in ${name} from the pom's properties; one it does not know is left as it is
+    private static String expand(String text, Map<String, String> properties) {
+        if (text == null) {
+            return null;
+        }
+        Matcher matcher = PROPERTY.matcher(text);
+        StringBuilder expanded = new StringBuilder();
+        while (matcher.find()) {
+            String value = properties.get(matcher.group(1));
+            matcher.appendReplacement(expanded, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(expanded);
+        return expanded.toString();
+    }
+
+    private static Element child(Element parent, String name) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && node.getNodeName().equals(name)) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static String childText(Element parent, String name) {
+        Element child = child(parent, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    // Kahn's algorithm; whatever is left over is part of a cycle
+    private static List<Module> topologicalOrder(List<Module> modules) throws IOException {
+        Map<Module, Integer> waitingOn = new HashMap<>();
+        Map<Module, List<Module>> dependents = new HashMap<>();
+        Deque<Module> ready = new ArrayDeque<>();
+        for (Module module : modules) {
+            waitingOn.put(module, module.dependencies.size());
+            for (Module dependency : module.dependencies) {
+                dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(module);
+            }
+            if (module.dependencies.isEmpty()) {
+                ready.add(module);
+            }
+        }
+        List<Module> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            Module module = ready.poll();
+            order.add(module);
+            for (Module dependent : dependents.getOrDefault(module, List.of())) {
+                if (waitingOn.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (order.size() < modules.size()) {
+            List<Module> cycle = new ArrayList<>(modules);
+            cycle.removeAll(order);
+            throw new IOException("Modules depend on each other in a cycle: " + cycle);
+        }
+        return order;
+    }
+}
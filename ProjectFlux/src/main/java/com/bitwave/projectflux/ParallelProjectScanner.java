@@ -0,0 +1,284 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32C;
+
+// Scans a whole project in parallel. Each directory is one fork/join task: it lists its entries
+// with attributes in one pass and forks a task per subdirectory, so idle workers steal whole
+// subtrees and the walk spreads over every core and however many reads the disk can serve.
+// Ignored entries are skipped before their subtrees are ever listed.
+final class ParallelProjectScanner {
+    // Larger files are compared by size and modification time only
+    static final long HASH_LIMIT = 1024 * 1024;
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparing((Entry entry) -> !entry.directory)
+            .thenComparing(entry -> entry.name, String.CASE_INSENSITIVE_ORDER);
+    private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private final ForkJoinPool pool;
+
+    ParallelProjectScanner() {
+        this(FluxExecutors.SCAN);
+    }
+
+    ParallelProjectScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    ProjectSnapshot scan(Path root) throws IOException {
+        return scan(root, null);
+    }
+
+    // Brings a previous snapshot of the same root up to date. A directory whose modification time
+    // is unchanged still has the same entries, so it is not listed again and its files keep their
+    // previous sizes and hashes; only its subdirectories are checked. A directory that did change
+    // is listed, and its files whose size and modification time are unchanged keep their hash.
+    // A file rewritten in place does not touch its directory, so its entry stays as it was until
+    // the directory next changes. Nothing relies on those entries for contents: builds, search and
+    // the editor stat or read the files themselves.
+    ProjectSnapshot scan(Path root, ProjectSnapshot previous) throws IOException {
+        Path projectRoot = root.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(projectRoot, BasicFileAttributes.class);
+        if (!attributes.isDirectory()) {
+            throw new IOException("Not a directory: " + projectRoot);
+        }
+        if (previous != null && !previous.root().equals(projectRoot)) {
+            previous = null;
+        }
+        Entry rootEntry = new Entry(FileNames.of(projectRoot), attributes);
+        try {
+            pool.invoke(new DirectoryScan(projectRoot, "", rootEntry, IgnoreRules.DEFAULT, previous, previous == null ? -1 : 0));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return flatten(projectRoot, rootEntry);
+    }
+
+    // Lays the tree out breadth-first, which puts every directory's children next to each other
+    private static ProjectSnapshot flatten(Path root, Entry rootEntry) {
+        int size = rootEntry.subtreeSize;
+        Entry[] entries = new Entry[size];
+        String[] names = new String[size];
+        int[] parents = new int[size];
+        int[] firstChildren = new int[size];
+        int[] childCounts = new int[size];
+        long[] sizes = new long[size];
+        long[] lastModified = new long[size];
+        long[] contentHashes = new long[size];
+
+        entries[0] = rootEntry;
+        parents[0] = -1;
+        int next = 1;
+        for (int i = 0; i < size; i++) {
+            Entry entry = entries[i];
+            entries[i] = null;
+            names[i] = entry.name;
+            sizes[i] = entry.size;
+            lastModified[i] = entry.lastModified;
+            contentHashes[i] = entry.hash;
+            if (!entry.directory) {
+                childCounts[i] = -1;
+                continue;
+            }
+            firstChildren[i] = next;
+            childCounts[i] = entry.children.size();
+            for (Entry child : entry.children) {
+                parents[next] = i;
+                entries[next++] = child;
+            }
+        }
+        return new ProjectSnapshot(root, names, parents, firstChildren, childCounts, sizes, lastModified, contentHashes);
+    }
+
+    // CRC32C of the content, or 0 if the file is too large or cannot be read
+    static long contentHash(Path file, long size) {
+        if (size > HASH_LIMIT) {
+            return 0;
+        }
+        CRC32C crc = new CRC32C();
+        byte[] buffer = HASH_BUFFER.get();
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        // The high bit marks a computed hash, so an empty file is not mistaken for "not hashed"
+        return crc.getValue() | 1L << 32;
+    }
+
+    private static final class Entry {
+        final String name;
+        final boolean directory;
+        final long size;
+        long lastModified;
+        long hash;
+        List<Entry> children = Collections.emptyList();
+        int subtreeSize = 1;
+
+        Entry(String name, BasicFileAttributes attributes) {
+            this.name = name;
+            this.directory = attributes.isDirectory();
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+
+        Entry(ProjectSnapshot snapshot, int index) {
+            this.name = snapshot.name(index);
+            this.directory = snapshot.isDirectory(index);
+            this.size = snapshot.fileSize(index);
+            this.lastModified = snapshot.lastModified(index);
+            this.hash = snapshot.contentHash(index);
+        }
+    }
+
+    private static final class DirectoryScan extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String relativePath;
+        private final Entry entry;
+        private final IgnoreRules parentRules;
+        private final ProjectSnapshot previous;
+        private final int previousIndex; // this directory in the previous snapshot, or -1
+
+        DirectoryScan(Path directory, String relativePath, Entry entry, IgnoreRules parentRules,
+                      ProjectSnapshot previous, int previousIndex) {
+            this.directory = directory;
+            this.relativePath = relativePath;
+            this.entry = entry;
+            this.parentRules = parentRules;
+            this.previous = previous;
+            this.previousIndex = previousIndex;
+        }
+
+        @Override
+        protected Void compute() {
+            List<Entry> children = new ArrayList<>();
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            try {
+                IgnoreRules rules = parentRules.forDirectory(directory, relativePath);
+                if (previousIndex >= 0 && unchanged()) {
+                    reusePrevious(children, subdirectories, rules);
+                } else {
+                    list(children, subdirectories, rules);
+                }
+            } catch (IOException e) {
+                if (relativePath.isEmpty()) {
+                    throw new UncheckedIOException(e);
+                }
+                return null; // An unreadable subdirectory shows up empty
+            }
+
+            invokeAll(subdirectories);
+            children.sort(ORDER);
+            for (Entry child : children) {
+                entry.subtreeSize += child.subtreeSize;
+            }
+            entry.children = children;
+            return null;
+        }
+
+        // Adding, removing or renaming an entry moves the directory's modification time. Editing its
+        // .gitignore may not, yet changes which entries belong, so that counts as a change too.
+        private boolean unchanged() throws IOException {
+            entry.lastModified = Files.getLastModifiedTime(directory).toMillis();
+            if (entry.lastModified != previous.lastModified(previousIndex)) {
+                return false;
+            }
+            int first = previous.firstChild(previousIndex);
+            for (int i = first; i < first + previous.childCount(previousIndex); i++) {
+                if (previous.name(i).equals(".gitignore") && !previous.isDirectory(i)) {
+                    try {
+                        BasicFileAttributes gitignore = Files.readAttributes(directory.resolve(".gitignore"), BasicFileAttributes.class);
+                        return gitignore.lastModifiedTime().toMillis() == previous.lastModified(i)
+                                && gitignore.size() == previous.fileSize(i);
+                    } catch (IOException e) {
+                        return false; // Gone since the directory was checked
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void reusePrevious(List<Entry> children, List<DirectoryScan> subdirectories, IgnoreRules rules) {
+            int first = previous.firstChild(previousIndex);
+            for (int i = first; i < first + previous.childCount(previousIndex); i++) {
+                Entry child = new Entry(previous, i);
+                children.add(child);
+                if (child.directory) {
+                    subdirectories.add(new DirectoryScan(directory.resolve(child.name), childPath(child.name), child, rules, previous, i));
+                }
+            }
+        }
+
+        private void list(List<Entry> children, List<DirectoryScan> subdirectories, IgnoreRules rules) throws IOException {
+            Map<String, Integer> previousChildren = previousChildren();
+            // Depth 1 hands every entry to visitFile together with its attributes, which on
+            // Windows come straight from the directory listing instead of a stat per file
+            Files.walkFileTree(directory, Collections.emptySet(), 1, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    String name = file.getFileName().toString();
+                    String childPath = childPath(name);
+                    if (rules.isIgnored(childPath, attributes.isDirectory())) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Entry child = new Entry(name, attributes);
+                    int old = previousChildren.getOrDefault(name, -1);
+                    if (old >= 0 && previous.isDirectory(old) != child.directory) {
+                        old = -1;
+                    }
+                    if (child.directory) {
+                        subdirectories.add(new DirectoryScan(file, childPath, child, rules, previous, old));
+                    } else if (old >= 0 && previous.fileSize(old) == child.size && previous.lastModified(old) == child.lastModified) {
+                        child.hash = previous.contentHash(old);
+                    } else {
+                        child.hash = contentHash(file, child.size);
+                    }
+                    children.add(child);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; // Unreadable entries are left out
+                }
+            });
+        }
+
+        private Map<String, Integer> previousChildren() {
+            if (previousIndex < 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, Integer> children = new HashMap<>();
+            int first = previous.firstChild(previousIndex);
+            for (int i = first; i < first + previous.childCount(previousIndex); i++) {
+                children.put(previous.name(i), i);
+            }
+            return children;
+        }
+
+        private String childPath(String name) {
+            return relativePath.isEmpty() ? name : relativePath + "/" + name;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.bitwave.projectflux;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Fuzzy "Go to File" over every file in a project snapshot. Paths are packed into one char
+// array, and each has a 64-bit mask of the characters it contains (and one for its file name),
+// so most paths are rejected with a single AND before a character is compared. Immutable.
+final class PathIndex {
+    static final int MAX_RESULTS = 100;
+
+    // Paths are matched in chunks of this many on the compute pool
+    private static final int CHUNK = 64 * 1024;
+
+    private final Path root;
+    private final char[] chars;
+    private final int[] starts; // path i is chars[starts[i], starts[i + 1])
+    private final int[] nameStarts;
+    private final long[] masks;
+    private final long[] nameMasks;
+
+    // A finished query. Its matches narrow the next query when that one only adds characters.
+    static final class Result {
+        final String query;
+        final int[] matches;
+        final int[] top; // best first
+
+        Result(String query, int[] matches, int[] top) {
+            this.query = query;
+            this.matches = matches;
+            this.top = top;
+        }
+    }
+
+    private PathIndex(Path root, char[] chars, int[] starts, int[] nameStarts, long[] masks, long[] nameMasks) {
+        this.root = root;
+        this.chars = chars;
+        this.starts = starts;
+        this.nameStarts = nameStarts;
+        this.masks = masks;
+        this.nameMasks = nameMasks;
+    }
+
+    static PathIndex build(ProjectSnapshot snapshot) {
+        int count = snapshot.fileCount();
+        int[] starts = new int[count + 1];
+        int[] nameStarts = new int[count];
+        long[] masks = new long[count];
+        long[] nameMasks = new long[count];
+        StringBuilder packed = new StringBuilder();
+        int id = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.isDirectory(i)) {
+                continue;
+            }
+            String path = snapshot.relativePath(i);
+            starts[id] = packed.length();
+            nameStarts[id] = packed.length() + path.lastIndexOf('/') + 1;
+            packed.append(path);
+            masks[id] = mask(path, 0);
+            nameMasks[id] = mask(path, path.lastIndexOf('/') + 1);
+            id++;
+        }
+        starts[count] = packed.length();
+        char[] chars = new char[packed.length()];
+        packed.getChars(0, chars.length, chars, 0);
+        return new PathIndex(snapshot.root(), chars, starts, nameStarts, masks, nameMasks);
+    }
+
+    int size() {
+        return masks.length;
+    }
+
+    String path(int id) {
+        return new String(chars, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    String fileName(int id) {
+        return new String(chars, nameStarts[id], starts[id + 1] - nameStarts[id]);
+    }
+
+    Path resolve(int id) {
+        return root.resolve(path(id));
+    }
+
+    // Matches and ranks the query. Only the previous result's matches are checked when the query
+    // extends the previous one, since a path that fails a prefix fails the whole query too.
+    // Call off the FX thread.
+    Result search(String query, Result previous) throws InterruptedException {
+        String needle = lowerAscii(query.replace('\\', '/').replace(" ", ""));
+        long needleMask = mask(needle, 0);
+        boolean narrow = previous != null && needle.startsWith(previous.query);
+        int total = narrow ? previous.matches.length : size();
+
+        List<Callable<long[]>> chunks = new ArrayList<>();
+        for (int from = 0; from < total; from += CHUNK) {
+            int chunkFrom = from;
+            int chunkTo = Math.min(total, from + CHUNK);
+            chunks.add(() -> matchChunk(needle, needleMask, narrow ? previous.matches : null, chunkFrom, chunkTo));
+        }
+        List<Future<long[]>> results = FluxExecutors.COMPUTE.invokeAll(chunks);
+
+        // Each chunk returns its matches as (score << 32 | id), in id order
+        int matchCount = 0;
+        long[][] scored = new long[results.size()][];
+        try {
+            for (int i = 0; i < scored.length; i++) {
+                scored[i] = results.get(i).get();
+                matchCount += scored[i].length;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        int[] matches = new int[matchCount];
+        TopScores top = new TopScores(MAX_RESULTS);
+        int next = 0;
+        for (long[] chunk : scored) {
+            for (long entry : chunk) {
+                matches[next++] = (int) entry;
+                top.offer(entry);
+            }
+        }
+        return new Result(needle, matches, top.ids());
+    }
+
+    private long[] matchChunk(String needle, long needleMask, int[] within, int from, int to) {
+        long[] scored = new long[Math.min(to - from, 1024)];
+        int count = 0;
+        int[] positions = new int[needle.length()];
+        for (int k = from; k < to; k++) {
+            int id = within == null ? k : within[k];
+            if ((needleMask & ~masks[id]) != 0) {
+                continue; // Some character of the query appears nowhere in the path
+            }
+            int score = score(id, needle, needleMask, positions);
+            if (score != Integer.MIN_VALUE) {
+                if (count == scored.length) {
+                    scored = Arrays.copyOf(scored, count * 2);
+                }
+                // Offset so the packed value stays positive and orders by score first
+                scored[count++] = (long) (score + (1 << 30)) << 32 | id;
+            }
+        }
+        return Arrays.copyOf(scored, count);
+    }
+
+    // Matches the query as a subsequence from the right, which prefers hits in the file name,
+    // then rewards runs, word starts and camel humps. MIN_VALUE if it is not a subsequence.
+    private int score(int id, String needle, long needleMask, int[] positions) {
+        int start = starts[id];
+        int end = starts[id + 1];
+        int i = end - 1;
+        for (int j = needle.length() - 1; j >= 0; j--) {
+            char wanted = needle.charAt(j);
+            while (i >= start && lower(chars[i]) != wanted) {
+                i--;
+            }
+            if (i < start) {
+                return Integer.MIN_VALUE;
+            }
+            positions[j] = i--;
+        }
+
+        int nameStart = nameStarts[id];
+        int score = -(end - start) / 8;
+        for (int j = 0; j < needle.length(); j++) {
+            int position = positions[j];
+            score++;
+            if (j > 0 && positions[j - 1] == position - 1) {
+                score += 5;
+            }
+            if (position == start || isBoundary(chars[position - 1], chars[position])) {
+                score += 8;
+            }
+            if (position >= nameStart) {
+                score += 2;
+            }
+        }
+        // The file name starting with the query is the strongest signal
+        if ((needleMask & ~nameMasks[id]) == 0 && startsWithIgnoreCase(nameStart, end, needle)) {
+            score += 20;
+        }
+        return score;
+    }
+
+    private boolean startsWithIgnoreCase(int from, int end, String needle) {
+        if (end - from < needle.length()) {
+            return false;
+        }
+        for (int j = 0; j < needle.length(); j++) {
+            if (lower(chars[from + j]) != needle.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBoundary(char previous, char current) {
+        return previous == '/' || previous == '_' || previous == '-' || previous == '.' || previous == ' '
+                || Character.isLowerCase(previous) && Character.isUpperCase(current);
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String lowerAscii(String text) {
+        char[] lowered = text.toCharArray();
+        for (int i = 0; i < lowered.length; i++) {
+            lowered[i] = lower(lowered[i]);
+        }
+        return new String(lowered);
+    }
+
+    // Bits 0-25 letters, 26-35 digits, then a few path punctuation characters; bit 63 is everything else
+    private static long mask(String text, int from) {
+        long mask = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = lower(text.charAt(i));
+            int bit;
+            if (c >= 'a' && c <= 'z') {
+                bit = c - 'a';
+            } else if (c >= '0' && c <= '9') {
+                bit = 26 + c - '0';
+            } else if (c == '.') {
+                bit = 36;
+            } else if (c == '_') {
+                bit = 37;
+            } else if (c == '-') {
+                bit = 38;
+            } else if (c == '/') {
+                bit = 39;
+            } else {
+                bit = 63;
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    // Keeps the highest scored entries in a min-heap of primitive longs
+    private static final class TopScores {
+        private final long[] heap;
+        private int size;
+
+        TopScores(int capacity) {
+            heap = new long[capacity];
+        }
+
+        void offer(long entry) {
+            if (size < heap.length) {
+                heap[size] = entry;
+                siftUp(size++);
+            } else if (entry > heap[0]) {
+                heap[0] = entry;
+                siftDown(0);
+            }
+        }
+
+        int[] ids() {
+            long[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = (int) sorted[size - 1 - i];
+            }
+            return ids;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && heap[(i - 1) / 2] > heap[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                if (left < size && heap[left] < heap[smallest]) {
+                    smallest = left;
+                }
+                if (left + 1 < size && heap[left + 1] < heap[smallest]) {
+                    smallest = left + 1;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long temp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = temp;
+        }
+    }
+}
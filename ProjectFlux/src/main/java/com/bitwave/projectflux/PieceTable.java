@@ -0,0 +1,607 @@
+package com.bitwave.projectflux;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Document model for files too large to hold as a String. The original file is memory-mapped
+// and never copied onto the heap; inserted text goes to an append-only add buffer. The
+// document is the sequence of pieces pointing into either buffer, kept in a treap ordered by
+// position, so edits and line lookups cost O(log n) in the number of pieces.
+// Offsets are UTF-8 byte offsets. Not thread-safe; confine an open table to one thread. Only a
+// Snapshot may be written from another thread, so a save does not hold up editing.
+// Saving over the file itself maps the new file and unmaps the old one before replacing it, as
+// Windows refuses to replace a file that is mapped.
+final class PieceTable implements Closeable {
+    // Newline counts are kept per chunk so a lookup never scans more than one chunk
+    private static final int CHUNK = 4096;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedBuffer original;
+    private final AddBuffer added = new AddBuffer();
+    private Node root;
+    private long version; // Counted up on every edit
+    private long savedVersion;
+
+    private PieceTable(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        original = new MappedBuffer(channel);
+        if (original.length() > 0) {
+            root = new Node(original, 0, original.length());
+        }
+    }
+
+    static PieceTable open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PieceTable(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long length() {
+        return size(root);
+    }
+
+    long lineCount() {
+        return lines(root) + 1;
+    }
+
+    void insert(long offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            return;
+        }
+        Node piece = new Node(added, added.append(bytes), bytes.length);
+        Node[] parts = split(root, offset);
+        root = merge(merge(parts[0], piece), parts[1]);
+        version++;
+    }
+
+    void delete(long offset, long length) {
+        if (length <= 0) {
+            return;
+        }
+        version++;
+        Node[] head = split(root, offset);
+        Node[] tail = split(head[1], length);
+        root = merge(head[0], tail[1]);
+    }
+
+    // Byte offset of the first character of the given line
+    long lineStart(long line) {
+        if (line == 0) {
+            return 0;
+        }
+        long target = line - 1; // index of the newline that ends the previous line
+        long offset = 0;
+        Node node = root;
+        while (node != null) {
+            long leftLines = lines(node.left);
+            if (target < leftLines) {
+                node = node.left;
+                continue;
+            }
+            target -= leftLines;
+            offset += size(node.left);
+            if (target < node.lines) {
+                long first = node.buffer.newlinesBefore(node.start);
+                return offset + node.buffer.newlineOffset(first + target) - node.start + 1;
+            }
+            target -= node.lines;
+            offset += node.length;
+            node = node.right;
+        }
+        throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount());
+    }
+
+    // Byte offset just past the line's content, excluding its line terminator
+    long lineEnd(long line) {
+        long end = line + 1 < lineCount() ? lineStart(line + 1) - 1 : length();
+        if (end > lineStart(line) && read(end - 1, 1)[0] == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    String getLine(long line) {
+        long start = lineStart(line);
+        return new String(read(start, lineEnd(line) - start), StandardCharsets.UTF_8);
+    }
+
+    void replaceLine(long line, String text) {
+        long start = lineStart(line);
+        delete(start, lineEnd(line) - start);
+        insert(start, text);
+    }
+
+    byte[] read(long offset, long length) {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Range too large to materialize: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        copy(root, 0, offset, offset + length, bytes);
+        return bytes;
+    }
+
+    // Writes the document to a temp file next to the target and moves it into place
+    void writeTo(Path target) throws IOException {
+        commit(snapshot().writeTemp(target));
+    }
+
+    // The pieces as they are now. Edits never change the bytes a piece points at, and the add
+    // buffer is only appended to, so this copies the piece list and none of the text.
+    Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(this, count(root));
+        fill(root, snapshot);
+        return snapshot;
+    }
+
+    // Whether the document changed since the last save that succeeded
+    boolean isDirty() {
+        return version != savedVersion;
+    }
+
+    // Call with the version of the snapshot that was written
+    void saved(long version) {
+        savedVersion = Math.max(savedVersion, version);
+    }
+
+    // Moves a written snapshot into place. If it replaces this table's own file, the pieces of the
+    // original are pointed into the new file first, and the old file is unmapped and closed so
+    // that nothing holds it open. Call on the table's thread, after any other snapshot of the
+    // table has been written.
+    void commit(Written written) throws IOException {
+        if (written.mapped == null) {
+            try {
+                move(written.temp, written.target);
+            } catch (IOException e) {
+                Files.deleteIfExists(written.temp);
+                throw e;
+            }
+            saved(written.version);
+            return;
+        }
+        MappedBuffer old = original;
+        rebase(root, old, written);
+        original = written.mapped;
+        FileChannel oldChannel = channel;
+        channel = written.channel;
+        old.unmap();
+        oldChannel.close();
+        try {
+            move(written.temp, written.target);
+        } catch (IOException e) {
+            // The table reads the temp file now, which has the same text; the target is untouched
+            try {
+                Files.deleteIfExists(written.temp);
+            } catch (IOException mapped) {
+                // Windows keeps a mapped file; it goes once the table is closed and the next save succeeds
+            }
+            throw e;
+        }
+        saved(written.version);
+    }
+
+    @Override
+    public void close() throws IOException {
+        original.unmap();
+        channel.close();
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // The pieces of the old original come from the snapshot's pieces of it, in the same order, so
+    // each one lies inside one of those and moves to where that piece was written in the new file
+    private static void rebase(Node node, MappedBuffer old, Written written) {
+        if (node == null) {
+            return;
+        }
+        rebase(node.left, old, written);
+        if (node.buffer == old) {
+            int piece = Arrays.binarySearch(written.originalStarts, node.start);
+            if (piece < 0) {
+                piece = -piece - 2;
+            }
+            node.buffer = written.mapped;
+            node.start = written.fileOffsets[piece] + node.start - written.originalStarts[piece]; // Same bytes, so the same lines
+        }
+        rebase(node.right, old, written);
+    }
+
+    // A snapshot written to a temp file, to be committed on the table's thread
+    static final class Written {
+        private final long version;
+        private final Path temp;
+        private final Path target;
+        // Only when replacing the table's own file
+        private MappedBuffer mapped;
+        private FileChannel channel;
+        private long[] originalStarts; // Of the snapshot's pieces of the original, ascending
+        private long[] fileOffsets; // Where each of those pieces starts in the temp file
+
+        private Written(long version, Path temp, Path target) {
+            this.version = version;
+            this.temp = temp;
+            this.target = target;
+        }
+    }
+
+    // The document at one version, to write from any thread while the table is being edited
+    static final class Snapshot {
+        final long version;
+        private final Path path;
+        private final FileChannel channel;
+        private final byte[] added;
+        private final boolean[] fromOriginal;
+        private final long[] starts;
+        private final long[] lengths;
+        private int pieces;
+
+        private Snapshot(PieceTable table, int pieces) {
+            version = table.version;
+            path = table.path;
+            channel = table.channel;
+            added = table.added.bytes;
+            fromOriginal = new boolean[pieces];
+            starts = new long[pieces];
+            lengths = new long[pieces];
+        }
+
+        // Writes to a temp file next to the target, mapping it if it is to replace the table's
+        // own file. Pieces of the original are transferred channel to channel without passing
+        // through the heap.
+        Written writeTemp(Path file) throws IOException {
+            Path target = Files.isSymbolicLink(file) ? file.toRealPath() : file; // Replace what the link points to, not the link
+            Path temp = SaveService.newTempFile(target);
+            Written written = new Written(version, temp, target);
+            try {
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    write(out);
+                    out.force(true);
+                }
+                if (Files.exists(target)) {
+                    SaveService.copyPermissions(target, temp);
+                    if (Files.exists(path) && Files.isSameFile(target, path)) {
+                        map(written);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (written.channel != null) {
+                    written.mapped.unmap();
+                    written.channel.close();
+                }
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            return written;
+        }
+
+        private void map(Written written) throws IOException {
+            written.channel = FileChannel.open(written.temp, StandardOpenOption.READ);
+            written.mapped = new MappedBuffer(written.channel);
+            int count = 0;
+            for (int i = 0; i < pieces; i++) {
+                if (fromOriginal[i]) {
+                    count++;
+                }
+            }
+            written.originalStarts = new long[count];
+            written.fileOffsets = new long[count];
+            long offset = 0;
+            for (int i = 0, k = 0; i < pieces; i++) {
+                if (fromOriginal[i]) {
+                    written.originalStarts[k] = starts[i];
+                    written.fileOffsets[k++] = offset;
+                }
+                offset += lengths[i];
+            }
+        }
+
+        private void write(FileChannel out) throws IOException {
+            for (int i = 0; i < pieces; i++) {
+                if (fromOriginal[i]) {
+                    long position = starts[i];
+                    long remaining = lengths[i];
+                    while (remaining > 0) {
+                        long transferred = channel.transferTo(position, remaining, out);
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                } else {
+                    ByteBuffer bytes = ByteBuffer.wrap(added, (int) starts[i], (int) lengths[i]);
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : count(node.left) + 1 + count(node.right);
+    }
+
+    private void fill(Node node, Snapshot snapshot) {
+        if (node == null) {
+            return;
+        }
+        fill(node.left, snapshot);
+        int i = snapshot.pieces++;
+        snapshot.fromOriginal[i] = node.buffer == original;
+        snapshot.starts[i] = node.start;
+        snapshot.lengths[i] = node.length;
+        fill(node.right, snapshot);
+    }
+
+    private static void copy(Node node, long nodeOffset, long from, long to, byte[] target) {
+        if (node == null) {
+            return;
+        }
+        long pieceStart = nodeOffset + size(node.left);
+        long pieceEnd = pieceStart + node.length;
+        if (from < pieceStart) {
+            copy(node.left, nodeOffset, from, to, target);
+        }
+        long start = Math.max(from, pieceStart);
+        long end = Math.min(to, pieceEnd);
+        if (start < end) {
+            node.buffer.read(node.start + start - pieceStart, target, (int) (start - from), (int) (end - start));
+        }
+        if (to > pieceEnd) {
+            copy(node.right, pieceEnd, from, to, target);
+        }
+    }
+
+    // Splits into [0, offset) and [offset, end), cutting a piece in two if the offset falls inside it
+    private static Node[] split(Node node, long offset) {
+        if (node == null) {
+            return new Node[2];
+        }
+        long leftSize = size(node.left);
+        if (offset <= leftSize) {
+            Node[] parts = split(node.left, offset);
+            node.left = parts[1];
+            node.update();
+            return new Node[]{parts[0], node};
+        }
+        if (offset >= leftSize + node.length) {
+            Node[] parts = split(node.right, offset - leftSize - node.length);
+            node.right = parts[0];
+            node.update();
+            return new Node[]{node, parts[1]};
+        }
+
+        long cut = offset - leftSize;
+        Node tail = new Node(node.buffer, node.start + cut, node.length - cut);
+        tail.priority = node.priority;
+        tail.right = node.right;
+        node.right = null;
+        node.setPiece(node.start, cut);
+        tail.update();
+        return new Node[]{node, tail};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static long size(Node node) {
+        return node == null ? 0 : node.subtreeLength;
+    }
+
+    private static long lines(Node node) {
+        return node == null ? 0 : node.subtreeLines;
+    }
+
+    private static final class Node {
+        Buffer buffer;
+        long start;
+        long length;
+        long lines;
+        int priority = ThreadLocalRandom.current().nextInt();
+        Node left;
+        Node right;
+        long subtreeLength;
+        long subtreeLines;
+
+        Node(Buffer buffer, long start, long length) {
+            this.buffer = buffer;
+            setPiece(start, length);
+        }
+
+        void setPiece(long start, long length) {
+            this.start = start;
+            this.length = length;
+            lines = buffer.newlinesBefore(start + length) - buffer.newlinesBefore(start);
+            update();
+        }
+
+        void update() {
+            subtreeLength = length + size(left) + size(right);
+            subtreeLines = lines + lines(left) + lines(right);
+        }
+    }
+
+    private abstract static class Buffer {
+        private final byte[] scratch = new byte[CHUNK];
+        private long[] chunkLines = new long[1]; // newlines in [0, c * CHUNK)
+        private int indexedChunks;
+
+        abstract long length();
+
+        abstract void read(long offset, byte[] target, int targetOffset, int length);
+
+        // Extends the per-chunk newline index over every complete chunk
+        void indexLines() {
+            int chunks = (int) (length() / CHUNK);
+            if (chunkLines.length < chunks + 1) {
+                chunkLines = Arrays.copyOf(chunkLines, Math.max(chunks + 1, chunkLines.length * 2));
+            }
+            for (int c = indexedChunks; c < chunks; c++) {
+                chunkLines[c + 1] = chunkLines[c] + countNewlines((long) c * CHUNK, (long) (c + 1) * CHUNK);
+            }
+            indexedChunks = chunks;
+        }
+
+        long newlinesBefore(long offset) {
+            int chunk = (int) (offset / CHUNK);
+            return chunkLines[chunk] + countNewlines((long) chunk * CHUNK, offset);
+        }
+
+        // Offset of the newline with the given zero-based index
+        long newlineOffset(long index) {
+            int low = 0;
+            int high = indexedChunks;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (chunkLines[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            long chunkStart = (long) low * CHUNK;
+            int length = (int) Math.min(CHUNK, length() - chunkStart);
+            read(chunkStart, scratch, 0, length);
+            long remaining = index - chunkLines[low];
+            for (int i = 0; i < length; i++) {
+                if (scratch[i] == '\n' && remaining-- == 0) {
+                    return chunkStart + i;
+                }
+            }
+            throw new IllegalStateException("Newline " + index + " not found");
+        }
+
+        private long countNewlines(long from, long to) {
+            int length = (int) (to - from);
+            read(from, scratch, 0, length);
+            long count = 0;
+            for (int i = 0; i < length; i++) {
+                if (scratch[i] == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class MappedBuffer extends Buffer {
+        // Files larger than 2 GB are mapped in 1 GB segments
+        private static final int SEGMENT_BITS = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+        private final MappedByteBuffer[] segments;
+        private final long length;
+
+        MappedBuffer(FileChannel channel) throws IOException {
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1L << SEGMENT_BITS, length - position));
+            }
+            indexLines();
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        // Releases the mapping now rather than whenever the buffers are collected. The segments
+        // are dropped first, so a read afterwards fails instead of touching unmapped memory.
+        void unmap() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Object unsafe = field.get(null);
+                for (int i = 0; i < segments.length; i++) {
+                    MappedByteBuffer segment = segments[i];
+                    segments[i] = null;
+                    if (segment != null) {
+                        invokeCleaner.invoke(unsafe, segment);
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace(); // Left to the garbage collector
+            }
+        }
+
+        @Override
+        void read(long offset, byte[] target, int targetOffset, int length) {
+            while (length > 0) {
+                MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+                int index = (int) (offset & SEGMENT_MASK);
+                int count = Math.min(length, segment.capacity() - index);
+                segment.get(index, target, targetOffset, count);
+                offset += count;
+                targetOffset += count;
+                length -= count;
+            }
+        }
+    }
+
+    private static final class AddBuffer extends Buffer {
+        private byte[] bytes = new byte[CHUNK];
+        private int size;
+
+        // Returns the offset the appended bytes start at
+        long append(byte[] text) {
+            if (size + text.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + text.length, bytes.length * 2));
+            }
+            System.arraycopy(text, 0, bytes, size, text.length);
+            size += text.length;
+            indexLines();
+            return size - text.length;
+        }
+
+        @Override
+        long length() {
+            return size;
+        }
+
+        @Override
+        void read(long offset, byte[] target, int targetOffset, int length) {
+            System.arraycopy(bytes, (int) offset, target, targetOffset, length);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Runs an external process without blocking the caller. stdout and stderr are each pumped on
+// their own thread, so neither pipe can fill up and stall the process, and output is handed on
+// in chunks of whatever was available rather than per line or per byte.
+final class ProcessRunner implements Execution {
+    private static final int CHUNK = 8192;
+
+    // Called on the pump threads, never on the FX thread
+    interface Output {
+        void accept(String text, boolean stderr);
+    }
+
+    private final Process process;
+    private final CompletableFuture<Integer> exit;
+    private volatile boolean killed;
+
+    private ProcessRunner(Process process, Output output) {
+        this.process = process;
+        try {
+            process.getOutputStream().close(); // Nothing is typed into it, so a read sees end of input instead of hanging
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        CompletableFuture<Void> stdout = CompletableFuture.runAsync(
+                () -> pump(process.getInputStream(), false, output), FluxExecutors.IO);
+        CompletableFuture<Void> stderr = CompletableFuture.runAsync(
+                () -> pump(process.getErrorStream(), true, output), FluxExecutors.IO);
+        // Completes only once both pipes are drained, so no output arrives after the exit code
+        exit = CompletableFuture.allOf(stdout, stderr)
+                .thenCompose(done -> process.onExit())
+                .thenApply(Process::exitValue);
+    }
+
+    // Throws IOException if the process cannot be started. directory may be null for the IDE's own.
+    static ProcessRunner start(List<String> command, Path directory, Output output) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        if (directory != null) {
+            builder.directory(directory.toFile());
+        }
+        return new ProcessRunner(builder.start(), output);
+    }
+
+    @Override
+    public CompletableFuture<Integer> onExit() {
+        return exit;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    @Override
+    public boolean wasKilled() {
+        return killed;
+    }
+
+    // Kills the process and everything it started, e.g. the JVM behind a build wrapper script
+    @Override
+    public void kill() {
+        killed = true;
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static void pump(InputStream stream, boolean stderr, Output output) {
+        try (Reader reader = new InputStreamReader(stream, Charset.defaultCharset())) {
+            char[] buffer = new char[CHUNK];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                if (read > 0) {
+                    output.accept(new String(buffer, 0, read), stderr);
+                }
+            }
+        } catch (IOException e) {
+            // The pipe closes under us when the process is killed
+        }
+    }
+}
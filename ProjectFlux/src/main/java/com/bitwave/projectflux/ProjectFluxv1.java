@@ -1,8 +1,11 @@
 package com.bitwave.projectflux;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
@@ -14,12 +17,27 @@ import javafx.scene.control.TreeView;
 import java.io.*;
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ProjectFluxv1 extends Application {
 
     private TabPane tabPane;
     private TreeView<String> projectExplorer;
     private Path currentProjectPath;
+    private ProjectSnapshot projectSnapshot;
+    private ProjectWatcher projectWatcher;
+    private TrigramIndex searchIndex;
+    private PathIndex pathIndex;
+    private SearchPanel searchPanel;
+    private TabHibernator<TextArea> hibernator;
+    private final DocumentRegistry<Tab> documents = new DocumentRegistry<>(); // Tabs that have a file
+    private final SaveService saveService = new SaveService(SaveService.Sync.DIRECTORY);
 
     public static void main(String[] args) {
         launch(args);
@@ -32,14 +50,17 @@ public class ProjectFluxv1 extends Application {
         // Layout Setup
         BorderPane root = new BorderPane();
         tabPane = new TabPane();
+        hibernator = new TabHibernator<>(tabPane, TabHibernator.textAreas(this::trackEdits));
         projectExplorer = new TreeView<>();
         setupProjectExplorer();
+        searchPanel = new SearchPanel(this::openFileAtLine, this::unsavedDocuments);
 
 
         VBox explorerBox = new VBox(new Label("Project Explorer"), projectExplorer);
         root.setLeft(explorerBox);
         root.setCenter(tabPane);
         root.setTop(createMenuBar(primaryStage));
+        root.setBottom(searchPanel);
 
 
         Scene scene = new Scene(root, 1000, 800);
@@ -47,6 +68,12 @@ public class ProjectFluxv1 extends Application {
         primaryStage.show();
     }
 
+    // Saves still in the background would be cut off when the JVM exits
+    @Override
+    public void stop() throws InterruptedException {
+        saveService.awaitIdle(10_000);
+    }
+
     private MenuBar createMenuBar(Stage primaryStage) {
         MenuBar menuBar = new MenuBar();
 
@@ -54,7 +81,8 @@ public class ProjectFluxv1 extends Application {
         Menu fileMenu = new Menu("File");
         MenuItem newProject = new MenuItem("New Project");
         MenuItem openProject = new MenuItem("Open Project");
-        MenuItem saveProject = new MenuItem("Save Project");
+        MenuItem saveAll = new MenuItem("Save All");
+        saveAll.setAccelerator(KeyCombination.keyCombination("Shortcut+Shift+S"));
 
         MenuItem newFile = new MenuItem("New File");
         MenuItem openFile = new MenuItem("Open File");
@@ -65,7 +93,7 @@ public class ProjectFluxv1 extends Application {
 
         newProject.setOnAction(event -> createNewProject(primaryStage));
         openProject.setOnAction(actionEvent -> openProject(primaryStage));
-        saveProject.setOnAction(actionEvent -> saveProject());
+        saveAll.setOnAction(actionEvent -> saveAll());
 
         newFile.setOnAction(e -> createNewTab());
         openFile.setOnAction(e -> openFile(primaryStage));
@@ -74,9 +102,19 @@ public class ProjectFluxv1 extends Application {
 
         exit.setOnAction(e -> primaryStage.close());
 
-        fileMenu.getItems().addAll(newProject, openProject, saveProject, new SeparatorMenuItem(), newFile, openFile, saveFile, saveAsFile, new SeparatorMenuItem(), exit);
+        fileMenu.getItems().addAll(newProject, openProject, saveAll, new SeparatorMenuItem(), newFile, openFile, saveFile, saveAsFile, new SeparatorMenuItem(), exit);
 
-        menuBar.getMenus().add(fileMenu);
+        // Search Menu
+        Menu searchMenu = new Menu("Search");
+        MenuItem findInFiles = new MenuItem("Find in Files");
+        findInFiles.setAccelerator(KeyCombination.keyCombination("Shortcut+Shift+F"));
+        findInFiles.setOnAction(e -> searchPanel.focusQuery());
+        MenuItem goToFile = new MenuItem("Go to File");
+        goToFile.setAccelerator(KeyCombination.keyCombination("Shortcut+Shift+N"));
+        goToFile.setOnAction(e -> goToFile(primaryStage));
+        searchMenu.getItems().addAll(findInFiles, goToFile);
+
+        menuBar.getMenus().addAll(fileMenu, searchMenu);
         return menuBar;
     }
 
@@ -87,7 +125,10 @@ public class ProjectFluxv1 extends Application {
 
         if (projectDir != null) {
             currentProjectPath = projectDir.toPath();
-            projectExplorer.setRoot(createDirectoryTree(currentProjectPath));
+            LazyTreeItem<String> projectRoot = createDirectoryTree(currentProjectPath);
+            projectExplorer.setRoot(projectRoot);
+            watchProject(projectRoot);
+            scanProject(currentProjectPath);
             createNewTab();
         }
     }
@@ -134,25 +175,60 @@ public class ProjectFluxv1 extends Application {
         return resolvedPath;
     }
 
-    private void openFileInEditor(Path filePath) {
+    // Selects the file's tab if it is open already, without reading the file. Null if it cannot be read.
+    private Tab openFileInEditor(Path filePath) {
+        Tab open = documents.find(filePath);
+        if (open != null) {
+            tabPane.getSelectionModel().select(open);
+            return open;
+        }
         try {
             String content = Files.readString(filePath);
             System.out.println("File content loaded: "+filePath);
             Tab tab = new Tab(filePath.getFileName().toString());
-            TextArea textArea = new TextArea(content);
-
-            tab.setContent(textArea);
             tab.setUserData(filePath);
+            hibernator.attach(tab, content);
             tab.setOnCloseRequest(e -> {
                 if (!confirmClose(tab)) {
                     e.consume();
                 }
             });
+            tab.setOnClosed(e -> closeDocument(tab));
+            documents.put(filePath, tab);
 
             tabPane.getTabs().add(tab);
             tabPane.getSelectionModel().select(tab);
+            return tab;
         } catch (IOException e) {
             showAlert("Error", "Failed to open file: "+filePath, Alert.AlertType.ERROR);
+            return null;
+        }
+    }
+
+    private void closeDocument(Tab tab) {
+        if (tab.getUserData() != null) {
+            documents.remove((Path) tab.getUserData(), tab);
+        }
+    }
+
+    private void openFileAtLine(Path filePath, int line) {
+        Tab tab = openFileInEditor(filePath);
+        if (tab != null) {
+            TextArea textArea;
+            try {
+                textArea = hibernator.editor(tab);
+            } catch (IOException e) {
+                showAlert("Error", "Failed to open file: " + filePath + "\n" + e.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            String text = textArea.getText();
+            int offset = 0;
+            for (int i = 1; i < line && offset >= 0; i++) {
+                offset = text.indexOf('\n', offset);
+                offset = offset < 0 ? -1 : offset + 1;
+            }
+            textArea.positionCaret(Math.max(0, offset));
+            textArea.requestFocus();
         }
     }
 
@@ -163,35 +239,210 @@ public class ProjectFluxv1 extends Application {
 
         if (projectDir != null) {
             currentProjectPath = projectDir.toPath();
-            projectExplorer.setRoot(createDirectoryTree(currentProjectPath));
+            LazyTreeItem<String> projectRoot = createDirectoryTree(currentProjectPath);
+            projectExplorer.setRoot(projectRoot);
+            watchProject(projectRoot);
+            scanProject(currentProjectPath);
         }
     }
 
-    private void saveProject() {
-        if (currentProjectPath != null) {
-            for (Tab tab : tabPane.getTabs()) {
-                saveFile();
+    // Keeps the explorer in step with changes made outside the IDE
+    private void watchProject(LazyTreeItem<String> projectRoot) {
+        if (projectWatcher != null) {
+            projectWatcher.close();
+        }
+        try {
+            projectWatcher = new ProjectWatcher(projectRoot.getPath(), changes -> {
+                projectRoot.applyChanges(changes);
+                reloadChangedDocuments(changes);
+                updateSearchIndex(changes);
+            });
+            projectWatcher.start();
+        } catch (IOException e) {
+            projectWatcher = null;
+            System.out.println("Could not watch project: " + e.getMessage());
+        }
+    }
+
+    // Scan in the background for search and indexing; the explorer itself stays lazy
+    private void scanProject(Path projectPath) {
+        projectSnapshot = null;
+        searchIndex = null;
+        pathIndex = null;
+        searchPanel.setIndex(null);
+        Task<ProjectSnapshot> scan = new Task<>() {
+            @Override
+            protected ProjectSnapshot call() throws IOException {
+                return ProjectIndex.open(projectPath); // Only changed folders are rescanned after the first open
+            }
+        };
+        scan.setOnSucceeded(e -> {
+            if (projectPath.equals(currentProjectPath)) {
+                projectSnapshot = scan.getValue();
+                System.out.println("Project scanned: " + projectSnapshot.fileCount() + " files");
+                buildPathIndex(projectSnapshot);
+                buildSearchIndex(projectSnapshot);
             }
-        } else {
-            showAlert("No Project", "Please create or open a project first", Alert.AlertType.WARNING);
+        });
+        scan.setOnFailed(e -> System.out.println("Project scan failed: " + scan.getException().getMessage()));
+        FluxExecutors.IO.execute(scan);
+    }
+
+    private void buildPathIndex(ProjectSnapshot snapshot) {
+        FluxExecutors.COMPUTE.execute(() -> {
+            PathIndex index = PathIndex.build(snapshot);
+            Platform.runLater(() -> {
+                if (snapshot == projectSnapshot) {
+                    pathIndex = index;
+                }
+            });
+        });
+    }
+
+    private void goToFile(Stage primaryStage) {
+        if (pathIndex == null) {
+            showAlert("Go to File", currentProjectPath == null ? "Please open a project first" : "The project is still being indexed", Alert.AlertType.INFORMATION);
+            return;
         }
+        new QuickOpenDialog(primaryStage, pathIndex).showAndWait().ifPresent(this::openFileInEditor);
+    }
+
+    private void buildSearchIndex(ProjectSnapshot snapshot) {
+        Task<TrigramIndex> build = new Task<>() {
+            @Override
+            protected TrigramIndex call() throws InterruptedException {
+                return TrigramIndex.build(snapshot);
+            }
+        };
+        build.setOnSucceeded(e -> {
+            if (snapshot == projectSnapshot) {
+                searchIndex = build.getValue();
+                searchPanel.setIndex(searchIndex);
+            }
+        });
+        build.setOnFailed(e -> System.out.println("Indexing failed: " + build.getException().getMessage()));
+        FluxExecutors.IO.execute(build);
     }
 
-    private TreeItem<String> createDirectoryTree(Path path) {
-        TreeItem<String> root = new TreeItem<>(path.getFileName().toString());
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-            for (Path entry : stream) {
-                if (Files.isDirectory(entry)) {
-                    root.getChildren().add(createDirectoryTree(entry));
+    // Files changed outside the IDE are read into Find in Files again. This is what catches files
+    // rewritten in place, which the project scan only sees once their folder changes.
+    private void updateSearchIndex(List<ProjectWatcher.Change> changes) {
+        TrigramIndex index = searchIndex;
+        if (index == null) {
+            return; // Still being built, from what is on disk now
+        }
+        List<ProjectWatcher.Change> files = new ArrayList<>();
+        for (ProjectWatcher.Change change : changes) {
+            if (!change.directory) {
+                files.add(change);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        FluxExecutors.IO.execute(() -> {
+            for (ProjectWatcher.Change change : files) {
+                if (change.kind == ProjectWatcher.Kind.DELETED) {
+                    index.remove(change.path);
                 } else {
-                    TreeItem<String> fileItem = new TreeItem<>(entry.getFileName().toString());
-                    fileItem.setGraphic(new Label("[File]"));
-                    root.getChildren().add(fileItem);
+                    index.update(change.path);
                 }
             }
-        } catch (IOException e) {
-            showAlert("Error", "Failed to load project structure.", Alert.AlertType.ERROR);
+        });
+    }
+
+    // Open files without unsaved changes follow edits made to them outside the IDE. Our own saves
+    // come back here too, and change nothing as the text is the same.
+    private void reloadChangedDocuments(List<ProjectWatcher.Change> changes) {
+        for (ProjectWatcher.Change change : changes) {
+            Tab tab = change.kind == ProjectWatcher.Kind.MODIFIED ? documents.get(change.path) : null;
+            if (tab == null || hibernator.isHibernating(tab) || DirtyState.of(tab).isDirty()) {
+                continue; // A hibernating tab reads its file again when it wakes
+            }
+            DirtyState state = DirtyState.of(tab);
+            long version = state.version();
+            Path file = change.path;
+            CompletableFuture.supplyAsync(() -> {
+                try {
+                    return Files.readString(file);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, FluxExecutors.IO).thenAccept(text -> Platform.runLater(() -> {
+                if (state.version() != version || documents.get(file) != tab || hibernator.isHibernating(tab)) {
+                    return; // Typed into or closed meanwhile
+                }
+                TextArea textArea;
+                try {
+                    textArea = hibernator.editor(tab);
+                } catch (IOException e) {
+                    return; // Awake, so it has nothing to read
+                }
+                if (!textArea.getText().equals(text)) {
+                    int caret = textArea.getCaretPosition();
+                    textArea.setText(text);
+                    textArea.positionCaret(Math.min(caret, text.length()));
+                    state.saved(state.version());
+                    showDirty(tab);
+                }
+            }));
+        }
+    }
+
+    // The text of open files with unsaved changes, for Find in Files to search instead of the disk
+    private Map<Path, String> unsavedDocuments() {
+        Map<Path, String> unsaved = new HashMap<>();
+        for (Tab tab : documents.documents()) {
+            if (DirtyState.of(tab).isDirty()) {
+                unsaved.put(DocumentRegistry.key((Path) tab.getUserData()), getTextFromTab(tab));
+            }
+        }
+        return unsaved;
+    }
+
+    // Saves every tab with unsaved changes at once, SaveService.PARALLELISM files at a time, and
+    // reports in one alert once they are all done. Clean tabs are not written at all.
+    private void saveAll() {
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        long started = System.nanoTime();
+        int untitled = 0;
+        for (Tab tab : tabPane.getTabs()) {
+            if (!DirtyState.of(tab).isDirty()) {
+                continue;
+            }
+            Path filePath = (Path) tab.getUserData();
+            if (filePath == null) {
+                untitled++; // Needs Save As for a name first
+                continue;
+            }
+            saves.add(writeFile(tab, filePath, false).exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                failed.add(filePath.getFileName() + ": " + cause.getMessage());
+                return null;
+            }));
         }
+        String needSaveAs = untitled == 0 ? "" : untitled + " untitled tabs need Save As";
+        if (saves.isEmpty()) {
+            showAlert("Save All", untitled == 0 ? "Nothing to save" : needSaveAs, Alert.AlertType.INFORMATION);
+            return;
+        }
+        CompletableFuture.allOf(saves.toArray(new CompletableFuture[0])).thenRun(() -> Platform.runLater(() -> {
+            String summary = "Saved " + (saves.size() - failed.size()) + " of " + saves.size() + " files in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms"
+                    + (needSaveAs.isEmpty() ? "" : "\n" + needSaveAs);
+            if (failed.isEmpty()) {
+                showAlert("Save All", summary, Alert.AlertType.INFORMATION);
+            } else {
+                showAlert("Error", summary + "\n\nFailed to save " + failed.size() + " files:\n" + String.join("\n", failed), Alert.AlertType.ERROR);
+            }
+        }));
+    }
+
+    // Folders are listed in the background the first time they are expanded
+    LazyTreeItem<String> createDirectoryTree(Path path) {
+        LazyTreeItem<String> root = new LazyTreeItem<>(path, true, FileNames::of, "Loading...",
+                (entry, directory) -> directory ? null : new Label("[File]"));
         root.setExpanded(true);
         return root;
     }
@@ -199,13 +450,13 @@ public class ProjectFluxv1 extends Application {
 
     private void createNewTab() {
         Tab tab = new Tab("Untitled");
-        TextArea textArea = new TextArea();
-        tab.setContent(textArea);
+        hibernator.attach(tab, "");
         tab.setOnCloseRequest(e -> {
             if (!confirmClose(tab)) {
                 e.consume();
             }
         });
+        tab.setOnClosed(e -> closeDocument(tab)); // Registered once saved under a name
         tabPane.getTabs().add(tab);
         tabPane.getSelectionModel().select(tab);
     }
@@ -215,22 +466,7 @@ public class ProjectFluxv1 extends Application {
         File file = fileChooser.showOpenDialog(primaryStage);
 
         if (file != null) {
-            try {
-                String content = Files.readString(file.toPath());
-                Tab tab = new Tab(file.getName());
-                TextArea textArea = new TextArea(content);
-                tab.setContent(textArea);
-                tab.setUserData(file.toPath());
-                tab.setOnCloseRequest(e -> {
-                    if (!confirmClose(tab)) {
-                        e.consume();
-                    }
-                });
-                tabPane.getTabs().add(tab);
-                tabPane.getSelectionModel().select(tab);
-            } catch (IOException e) {
-                showAlert("Error", "Failed to open file.", Alert.AlertType.ERROR);
-            }
+            openFileInEditor(file.toPath());
         }
     }
 
@@ -239,8 +475,7 @@ public class ProjectFluxv1 extends Application {
         if (selectedTab != null) {
             Path filePath = (Path) selectedTab.getUserData();
             if (filePath != null) {
-                writeFile(filePath, getTextFromTab(selectedTab));
-                selectedTab.setText(selectedTab.getText().replace("*", ""));
+                writeFile(selectedTab, filePath, true);
             }
         }
     }
@@ -253,15 +488,18 @@ public class ProjectFluxv1 extends Application {
 
             if (file != null) {
                 Path filePath = file.toPath();
-                writeFile(filePath, getTextFromTab(selectedTab));
+                closeDocument(selectedTab);
                 selectedTab.setUserData(filePath);
+                documents.put(filePath, selectedTab);
                 selectedTab.setText(file.getName());
+                showDirty(selectedTab);
+                writeFile(selectedTab, filePath, true);
             }
         }
     }
 
     private boolean confirmClose(Tab tab) {
-        if (tab.getText().endsWith("*")) {
+        if (DirtyState.of(tab).isDirty()) {
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
             alert.setTitle("Unsaved Changes");
             alert.setHeaderText("You have unsaved changes.");
@@ -283,15 +521,49 @@ public class ProjectFluxv1 extends Application {
     }
 
     private String getTextFromTab(Tab tab) {
-        TextArea textArea = (TextArea) tab.getContent();
-        return textArea.getText();
+        return hibernator.text(tab);
     }
 
-    private void writeFile(Path filePath, String content) {
-        try {
-            Files.writeString(filePath, content);
-        } catch (IOException e) {
-            showAlert("Error", "Failed to save file.", Alert.AlertType.ERROR);
+    // Saves a snapshot of the tab's text in the background, so typing carries on meanwhile. The tab
+    // is marked saved once the save succeeds, unless it was edited again in the meantime.
+    private CompletableFuture<Void> writeFile(Tab tab, Path filePath, boolean alertOnFailure) {
+        DirtyState state = DirtyState.of(tab);
+        long version = state.version();
+        TrigramIndex index = searchIndex;
+        return saveService.save(filePath, getTextFromTab(tab)).whenComplete((saved, error) -> {
+            if (error != null) {
+                if (alertOnFailure) {
+                    Platform.runLater(() -> showAlert("Error", "Failed to save file.", Alert.AlertType.ERROR));
+                }
+                return;
+            }
+            Platform.runLater(() -> {
+                state.saved(version);
+                showDirty(tab);
+            });
+            if (index != null) {
+                index.update(filePath);
+            }
+        });
+    }
+
+    // Marks the tab with * while it has unsaved changes. Called for every editor the tab gets.
+    private void trackEdits(Tab tab, TextArea textArea) {
+        DirtyState state = DirtyState.track(tab);
+        textArea.textProperty().addListener((obs, oldText, newText) -> {
+            state.edited();
+            showDirty(tab);
+        });
+    }
+
+    private static void showDirty(Tab tab) {
+        String title = tab.getText();
+        boolean marked = title.endsWith("*");
+        boolean dirty = DirtyState.of(tab).isDirty();
+        if (dirty && !marked) {
+            tab.setText(title + "*");
+        } else if (!dirty && marked) {
+            tab.setText(title.substring(0, title.length() - 1));
         }
     }
 
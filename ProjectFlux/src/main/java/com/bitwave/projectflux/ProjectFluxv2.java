@@ -9,13 +9,12 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.util.HashMap;
-import java.util.Map;
 
 public class ProjectFluxv2 extends Application {
     private TreeView<String> projectExplorer;
     private TabPane editorTabs;
-    private Map<TreeItem<String>, Path> treeItemPathMap = new HashMap<>();
+    private TabHibernator<TextArea> hibernator;
+    private ProjectWatcher projectWatcher;
 
     @Override
     public void start(Stage primaryStage) {
@@ -24,6 +23,11 @@ public class ProjectFluxv2 extends Application {
 
         projectExplorer = new TreeView<>();
         editorTabs = new TabPane();
+        // A clean tab hibernates as just its path, so edits are tracked
+        hibernator = new TabHibernator<>(editorTabs, TabHibernator.textAreas((tab, textArea) -> {
+            DirtyState state = DirtyState.track(tab);
+            textArea.textProperty().addListener((obs, oldText, newText) -> state.edited());
+        }));
 
         // Create project management pane
         VBox projectPane = new VBox(new Label("Project Explorer"), projectExplorer);
@@ -72,25 +76,29 @@ public class ProjectFluxv2 extends Application {
     }
 
     private void populateProjectExplorer(Path rootPath) {
-        TreeItem<String> rootItem = createTreeItem(rootPath);
+        LazyTreeItem<String> rootItem = createTreeItem(rootPath);
         projectExplorer.setRoot(rootItem);
         rootItem.setExpanded(true);
+        watchProject(rootItem);
     }
 
-    private TreeItem<String> createTreeItem(Path path) {
-        TreeItem<String> item = new TreeItem<>(path.getFileName().toString());
-        treeItemPathMap.put(item, path);
-
-        if (Files.isDirectory(path)) {
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-                for (Path subPath : stream) {
-                    item.getChildren().add(createTreeItem(subPath));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    // Keeps the explorer in step with changes made outside the IDE
+    private void watchProject(LazyTreeItem<String> rootItem) {
+        if (projectWatcher != null) {
+            projectWatcher.close();
+        }
+        try {
+            projectWatcher = new ProjectWatcher(rootItem.getPath(), rootItem::applyChanges);
+            projectWatcher.start();
+        } catch (IOException e) {
+            projectWatcher = null;
+            System.out.println("Could not watch project: " + e.getMessage());
         }
-        return item;
+    }
+
+    // Folders are listed in the background the first time they are expanded
+    LazyTreeItem<String> createTreeItem(Path path) {
+        return new LazyTreeItem<>(path, Files.isDirectory(path), FileNames::of, "Loading...");
     }
 
     private void setUpProjectExplorer() {
@@ -98,7 +106,7 @@ public class ProjectFluxv2 extends Application {
             if (event.getClickCount() == 2) {
                 TreeItem<String> selectedItem = projectExplorer.getSelectionModel().getSelectedItem();
                 if (selectedItem != null) {
-                    Path filePath = treeItemPathMap.get(selectedItem);
+                    Path filePath = selectedItem instanceof LazyTreeItem ? ((LazyTreeItem<String>) selectedItem).getPath() : null;
                     if (filePath != null && Files.isRegularFile(filePath)) {
                         openFileInEditor(filePath);
                     } else {
@@ -115,8 +123,8 @@ public class ProjectFluxv2 extends Application {
         try {
             String content = Files.readString(filePath);
             Tab tab = new Tab(filePath.getFileName().toString());
-            TextArea textArea = new TextArea(content);
-            tab.setContent(textArea);
+            tab.setUserData(filePath);
+            hibernator.attach(tab, content);
             editorTabs.getTabs().add(tab);
             editorTabs.getSelectionModel().select(tab);
         } catch (IOException e) {
@@ -1,8 +1,7 @@
 package com.bitwave.projectflux;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -12,22 +11,33 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.model.StyleSpans;
 
 import java.io.File;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
-import java.util.regex.Pattern;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public class ProjectFluxv3 extends Application {
     private TreeView<File> projectExplorer;
     private StyleClassedTextArea codeEditor;
-    private File currentFile;
+    private ProjectWatcher projectWatcher;
+    private TabHibernator<StyleClassedTextArea> hibernator;
+    private final SaveService saveService = new SaveService(SaveService.Sync.DIRECTORY);
 
     @Override
     public void start(Stage primaryStage) {
         BorderPane root = new BorderPane();
+        hibernator = new TabHibernator<>(tabPane, TabHibernator.styledAreas(this::setUpEditor));
+        // The file changed while its clean tab hibernated, so the journal starts from the new text
+        hibernator.onReloaded((tab, text) -> {
+            EditJournal journal = journal(tab);
+            journal.saved(journal.version(), text);
+        });
 
         //Top Menu
         MenuBar menuBar = new MenuBar();
@@ -41,7 +51,6 @@ public class ProjectFluxv3 extends Application {
         projectExplorer = new TreeView<>();
         projectExplorer.setOnMouseClicked(event -> {
             if (event.getClickCount() == 2) {
-                System.out.println("Opening" + currentFile);
                 TreeItem<File> selectedItem = projectExplorer.getSelectionModel().getSelectedItem();
                 if (selectedItem != null && selectedItem.getValue().isFile()) {
                     openFile(selectedItem.getValue());
@@ -59,6 +68,7 @@ public class ProjectFluxv3 extends Application {
         root.setLeft(projectExplorer);
         root.setCenter(codeEditor);
         root.setBottom(consoleOutput);
+        setConsoleOutput();
 
         //Menu Actions
         openProject.setOnAction(event -> openProjectFolder(primaryStage));
@@ -70,6 +80,13 @@ public class ProjectFluxv3 extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
 
+        restoreUnsavedDocuments();
+    }
+
+    // Saves still in the background would be cut off when the JVM exits
+    @Override
+    public void stop() throws InterruptedException {
+        saveService.awaitIdle(10_000);
     }
 
     private void openProjectFolder(Stage stage) {
@@ -78,9 +95,11 @@ public class ProjectFluxv3 extends Application {
         File selectedDirectory = directoryChooser.showDialog(stage);
 
         if (selectedDirectory != null && selectedDirectory.isDirectory()) {
-            TreeItem<File> rootItem = new TreeItem<>(selectedDirectory);
-            buildFileTree(rootItem, selectedDirectory);
+            // Folders are listed in the background the first time they are expanded
+            LazyTreeItem<File> rootItem = new LazyTreeItem<>(selectedDirectory.toPath(), true, Path::toFile, new File("Loading..."));
+            rootItem.setExpanded(true);
             projectExplorer.setRoot(rootItem);
+            watchProject(rootItem);
 
             projectExplorer.setCellFactory(tv -> new TreeCell<>() {
                 @Override
@@ -92,77 +111,135 @@ public class ProjectFluxv3 extends Application {
         }
     }
 
-    private void buildFileTree(TreeItem<File> parent, File dir) {
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                TreeItem<File> item = new TreeItem<>(file);
-                parent.getChildren().add(item);
-                if (file.isDirectory()) {
-                    buildFileTree(item, file);
-                }
-            }
+    // Keeps the explorer in step with changes made outside the IDE
+    private void watchProject(LazyTreeItem<File> rootItem) {
+        if (projectWatcher != null) {
+            projectWatcher.close();
+        }
+        try {
+            projectWatcher = new ProjectWatcher(rootItem.getPath(), rootItem::applyChanges);
+            projectWatcher.start();
+        } catch (IOException e) {
+            projectWatcher = null;
+            System.out.println("Could not watch project: " + e.getMessage());
         }
     }
 
     private TabPane tabPane = new TabPane();
+    private final DocumentRegistry<Tab> documents = new DocumentRegistry<>();
 
+    // A file already open is found before anything is read
     private void openFile(File file) {
+        Tab open = documents.find(file.toPath());
+        if (open != null) {
+            tabPane.getSelectionModel().select(open);
+            return;
+        }
         try {
             String content = Files.readString(file.toPath());
-
-            for (Tab tab : tabPane.getTabs()) {
-                if (tab.getText().equals(file.getName())) {
-                    tabPane.getSelectionModel().select(tab);
-                    return;
-                }
-            }
-
-            StyleClassedTextArea editor = new StyleClassedTextArea();
-            editor.replaceText(content);
-            editor.setWrapText(true);
-
-            Tab tab = new Tab(file.getName(), editor);
-            tab.setOnClosed(e -> closeTab(tab, file));
-            tabPane.getTabs().add(tab);
-            tabPane.getSelectionModel().select(tab);
+            openTab(file, content, content);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    // text is what the editor starts with, diskText what the file holds
+    private Tab openTab(File file, String text, String diskText) {
+        Tab tab = new Tab(file.getName());
+        tab.setUserData(file.toPath());
+        tab.getProperties().put(EditJournal.class, EditJournal.open(file.toPath(), diskText));
+        hibernator.attach(tab, text);
+        tab.setOnClosed(e -> closeTab(tab, file));
+        documents.put(file.toPath(), tab);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+        return tab;
+    }
+
+    private static EditJournal journal(Tab tab) {
+        return (EditJournal) tab.getProperties().get(EditJournal.class);
+    }
+
+    // Called for every editor a tab gets, as a hibernated tab gets a new one when it is selected
+    private void setUpEditor(Tab tab, StyleClassedTextArea editor) {
+        editor.setWrapText(true);
+        DirtyState state = DirtyState.track(tab);
+        editor.plainTextChanges().subscribe(change -> state.edited());
+        journalEdits(journal(tab), editor);
+    }
+
     private void closeTab(Tab tab, File file) {
+        documents.remove(file.toPath(), tab);
+        journal(tab).close();
+    }
 
+    // Every edit goes into the file's journal within milliseconds, so a crash loses next to nothing
+    private void journalEdits(EditJournal journal, StyleClassedTextArea editor) {
+        editor.plainTextChanges().subscribe(change -> {
+            if (journal.record(change.getPosition(), change.getRemoved().length(), change.getInserted())) {
+                journal.compact(editor.getText());
+            }
+        });
+    }
+
+    // Reopens the documents that had unsaved edits when the IDE last went down, marked unsaved
+    private void restoreUnsavedDocuments() {
+        CompletableFuture.supplyAsync(EditJournal::recover, FluxExecutors.IO).thenAccept(documents -> Platform.runLater(() -> {
+            for (EditJournal.Recovered document : documents) {
+                Tab tab = openTab(document.file.toFile(), document.text, document.diskText != null ? document.diskText : "");
+                tab.setText(tab.getText() + "*");
+                DirtyState.of(tab).edited(); // Only the journal holds this text, so it must not hibernate as a path
+                // The restored text is not on disk, so the new journal starts from all of it
+                journal(tab).compact(document.text);
+            }
+        }));
     }
 
+    // Saves the selected tab. Written in the background, so a save never holds up typing. The
+    // journal is told about the very text written, so it only lets go of edits that are on disk.
     private void saveCurrentFile() {
-        if (currentFile != null) {
-            try {
-                Files.writeString(currentFile.toPath(), codeEditor.getText(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            } catch (Exception e) {
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        DirtyState state = tab != null ? DirtyState.of(tab) : null;
+        if (state == null || !state.isDirty()) {
+            return; // Nothing the file does not hold already
+        }
+        Path file = (Path) tab.getUserData();
+        String text = hibernator.text(tab);
+        EditJournal journal = journal(tab);
+        long version = journal.version();
+        long stateVersion = state.version();
+        saveService.save(file, text).whenComplete((saved, e) -> {
+            if (e != null) {
                 e.printStackTrace();
+                return;
             }
-        }
+            Platform.runLater(() -> {
+                state.saved(stateVersion);
+                journal.saved(version, text);
+            });
+        });
     }
 
+    private static final JavaLexer LEXER = new JavaLexer(
+            "class", "public", "static", "void", "int", "new", "if", "else", "return", "double",
+            "float", "boolean", "char", "String", "long", "short", "byte");
+
+    // Highlighting runs on pool threads, so each keeps its own reusable token arrays
+    private static final ThreadLocal<syntax> TOKENIZER = ThreadLocal.withInitial(() -> new syntax(LEXER));
+
+    private AsyncHighlighter<StyleSpans<Collection<String>>> highlighter;
+
     private void applySyntaxHighlighting() {
-        codeEditor.textProperty().addListener((obs, oldText, newText) -> {
-            codeEditor.clearStyle(0, newText.length());
-
-            Pattern keywordPattern = Pattern.compile("\\b(class|public|static|void|int|new|if|else|return|double|float|boolean|char|String|long|short|byte)\\b");
-            Pattern commentPattern = Pattern.compile("//.*|/\\*.*?\\*/", Pattern.DOTALL);
-            Pattern stringPattern = Pattern.compile("\"([^\"\\\\]*(\\\\.[^\"\\\\]*)*)\"");
-            Pattern numberPattern = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
-            Pattern operatorPattern = Pattern.compile("[=+\\-*/&|!><]=?");
-            Pattern annotationPattern = Pattern.compile("@\\w+");
-
-            keywordPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "keyword"));
-            commentPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "comment"));
-            stringPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "string"));
-            numberPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "number"));
-            operatorPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "operator"));
-            annotationPattern.matcher(newText).results().forEach(match -> codeEditor.setStyleClass(match.start(), match.end(), "annotation"));
-        });
+        highlighter = new AsyncHighlighter<>(codeEditor::getText, ProjectFluxv3::computeHighlighting,
+                spans -> codeEditor.setStyleSpans(0, spans), Duration.millis(150));
+        codeEditor.plainTextChanges().subscribe(change -> highlighter.schedule());
+    }
+
+    // Runs off the FX thread: one linear scan feeding a single StyleSpans build
+    static StyleSpans<Collection<String>> computeHighlighting(String text) {
+        syntax tokenizer = TOKENIZER.get();
+        tokenizer.tokenize(text);
+        return tokenizer.toStyleSpans();
     }
 
     private void dragdrop(Scene scene) {
@@ -174,23 +251,13 @@ public class ProjectFluxv3 extends Application {
         });
     }
 
-    private TextArea consoleOutput = new TextArea();
+    private final ConsoleView consoleOutput = new ConsoleView(ConsoleView.DEFAULT_MAX_LINES);
 
+    // System.out and System.err go to the console, stderr in red. Writes never touch the UI directly,
+    // so logging from any thread is safe and costs no more than adding lines to a buffer.
     private void setConsoleOutput() {
-        PrintStream consoleStream = new PrintStream(new OutputStream() {
-            @Override
-            public void write(int b) {
-                consoleOutput.appendText(String.valueOf((char) b));
-            }
-        });
-        System.setOut(consoleStream);
-        System.setErr(consoleStream);
-    }
-
-    private void autoSave() {
-        Timeline autosaveTimer = new Timeline(new KeyFrame(Duration.seconds(30), e -> saveCurrentFile()));
-        autosaveTimer.setCycleCount(Timeline.INDEFINITE);
-        autosaveTimer.play();
+        System.setOut(new PrintStream(new ConsoleOutputStream(consoleOutput, false), false, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new ConsoleOutputStream(consoleOutput, true), false, StandardCharsets.UTF_8));
     }
 
     private void trackChanges(Tab tab, StyleClassedTextArea editor) {
@@ -1,51 +1,67 @@
 package com.bitwave.projectflux;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.fxmisc.richtext.CodeArea;
-import org.fxmisc.richtext.LineNumberFactory;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 
 import java.io.*;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class ProjectFluxv5 extends Application {
 
+    // Files above this size open in large-file mode instead of the CodeEditor
+    private static final long LARGE_FILE_THRESHOLD = 32L * 1024 * 1024;
+
+    private BorderPane root;
     private CodeEditor codeEditor;
     private Terminal terminal;
+    private BuildRunPanel buildRunPanel;
+    private FileExplorer fileExplorer;
     private File currentFile;
+    private PieceTable largeDocument;
+    private HBox loadingBar;
+    private ProgressBar loadProgress;
+    private Task<?> loadTask;
+    private final SaveService saveService = new SaveService(SaveService.Sync.DIRECTORY);
+    private CompletableFuture<Void> largeSave = CompletableFuture.completedFuture(null); // The last large document save started
+    private final BlockingQueue<Runnable> largeSaveSteps = new LinkedBlockingQueue<>(); // Parts of those saves due on the FX thread
 
     @Override
     public void start(Stage primaryStage) {
         // Create the main layout
-        BorderPane root = new BorderPane();
+        root = new BorderPane();
 
         // Code Editor
         codeEditor = new CodeEditor();
 
         // File Explorer
-        FileExplorer fileExplorer = new FileExplorer("C:/"); // Change to your desired root path
+        fileExplorer = new FileExplorer("C:/"); // Change to your desired root path
 
         // Terminal/Console
         terminal = new Terminal();
 
         // Build and Run Panel
-        BuildRunPanel buildRunPanel = new BuildRunPanel(codeEditor, terminal);
+        buildRunPanel = new BuildRunPanel(codeEditor, terminal);
 
         // Menu Bar
         MenuBar menuBar = createMenuBar(primaryStage);
 
+        // Shown while a file is loading
+        loadingBar = createLoadingBar();
+
         // Add components to the layout
-        root.setTop(menuBar);
+        root.setTop(new VBox(menuBar, loadingBar));
         root.setLeft(fileExplorer);
         root.setCenter(codeEditor);
         root.setBottom(terminal);
@@ -58,6 +74,20 @@ public class ProjectFluxv5 extends Application {
         primaryStage.show();
     }
 
+    // Saves still in the background would be cut off when the JVM exits
+    @Override
+    public void stop() throws InterruptedException {
+        saveService.awaitIdle(10_000);
+        // This is the FX thread, so the steps of large saves are run here rather than by runLater
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!largeSave.isDone() && System.currentTimeMillis() < deadline) {
+            Runnable step = largeSaveSteps.poll(100, TimeUnit.MILLISECONDS);
+            if (step != null) {
+                step.run();
+            }
+        }
+    }
+
     private MenuBar createMenuBar(Stage primaryStage) {
         MenuBar menuBar = new MenuBar();
 
@@ -67,169 +97,238 @@ public class ProjectFluxv5 extends Application {
         newMenuItem.setOnAction(e -> newFile());
         MenuItem openMenuItem = new MenuItem("Open");
         openMenuItem.setOnAction(e -> openFile(primaryStage));
+        MenuItem openProjectMenuItem = new MenuItem("Open Project");
+        openProjectMenuItem.setOnAction(e -> openProject(primaryStage));
         MenuItem saveMenuItem = new MenuItem("Save");
         saveMenuItem.setOnAction(e -> saveFile(primaryStage));
         MenuItem saveAsMenuItem = new MenuItem("Save As");
         saveAsMenuItem.setOnAction(e -> saveFileAs(primaryStage));
-        fileMenu.getItems().addAll(newMenuItem, openMenuItem, saveMenuItem, saveAsMenuItem);
+        fileMenu.getItems().addAll(newMenuItem, openMenuItem, openProjectMenuItem, saveMenuItem, saveAsMenuItem);
 
         menuBar.getMenus().add(fileMenu);
         return menuBar;
     }
 
+    private HBox createLoadingBar() {
+        loadProgress = new ProgressBar();
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> cancelLoad());
+
+        HBox bar = new HBox(10, new Label("Loading..."), loadProgress, cancelButton);
+        bar.setVisible(false);
+        bar.setManaged(false);
+        return bar;
+    }
+
     private void newFile() {
+        cancelLoad();
+        closeLargeDocument();
         codeEditor.clear();
-        currentFile = null;
+        setCurrentFile(null);
     }
 
     private void openFile(Stage primaryStage) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open File");
         File file = fileChooser.showOpenDialog(primaryStage);
-        if (file != null) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                codeEditor.clear();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    codeEditor.appendText(line + "\n");
-                }
-                currentFile = file;
-            } catch (IOException e) {
-                terminal.appendText("Error opening file: " + e.getMessage() + "\n");
-            }
+        if (file != null && file.length() > LARGE_FILE_THRESHOLD) {
+            openLargeFile(file);
+        } else if (file != null) {
+            closeLargeDocument();
+            loadFile(file);
         }
     }
 
-    private void saveFile(Stage primaryStage) {
-        if (currentFile != null) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(currentFile))) {
-                writer.write(codeEditor.getText());
-            } catch (IOException e) {
-                terminal.appendText("Error saving file: " + e.getMessage() + "\n");
-            }
-        } else {
-            saveFileAs(primaryStage);
+    // Shows the folder in the explorer, and Build then builds every source in it incrementally
+    private void openProject(Stage primaryStage) {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Open Project");
+        File directory = directoryChooser.showDialog(primaryStage);
+        if (directory != null) {
+            fileExplorer.setRootPath(directory.toPath());
+            buildRunPanel.setSourceRoot(directory.toPath());
         }
     }
 
-    private void saveFileAs(Stage primaryStage) {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Save File");
-        File file = fileChooser.showSaveDialog(primaryStage);
-        if (file != null) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                writer.write(codeEditor.getText());
-                currentFile = file;
-            } catch (IOException e) {
-                terminal.appendText("Error saving file: " + e.getMessage() + "\n");
-            }
-        }
+    // Streams the file into the editor in a few batches with highlighting held back until the end
+    private void loadFile(File file) {
+        cancelLoad();
+        codeEditor.clear();
+        setCurrentFile(null);
+        codeEditor.setHighlightingSuspended(true);
+
+        FileLoadTask task = new FileLoadTask(file.toPath(), codeEditor::appendText);
+        task.setOnSucceeded(e -> {
+            codeEditor.getUndoManager().forgetHistory(); // Loading the file is not an undoable edit
+            setCurrentFile(file);
+            codeEditor.setHighlightingSuspended(false);
+            finishLoad();
+        });
+        task.setOnFailed(e -> {
+            terminal.appendLine("Error opening file: " + task.getException().getMessage(), true);
+            codeEditor.clear();
+            codeEditor.setHighlightingSuspended(false);
+            finishLoad();
+        });
+        task.setOnCancelled(e -> {
+            codeEditor.clear();
+            codeEditor.setHighlightingSuspended(false);
+            finishLoad();
+        });
+        startLoad(task);
     }
 
-    public static void main(String[] args) {
-        launch(args);
+    private void openLargeFile(File file) {
+        cancelLoad();
+        Task<PieceTable> task = new Task<>() {
+            @Override
+            protected PieceTable call() throws IOException {
+                PieceTable document = PieceTable.open(file.toPath());
+                if (isCancelled()) {
+                    document.close();
+                    return null;
+                }
+                return document;
+            }
+        };
+        task.setOnSucceeded(e -> {
+            closeLargeDocument();
+            largeDocument = task.getValue();
+            root.setCenter(new LargeFileView(largeDocument));
+            setCurrentFile(file);
+            finishLoad();
+        });
+        task.setOnFailed(e -> {
+            terminal.appendLine("Error opening file: " + task.getException().getMessage(), true);
+            finishLoad();
+        });
+        task.setOnCancelled(e -> finishLoad());
+        startLoad(task);
     }
-}
-
-// Code Editor with Syntax Highlighting
-class CodeEditor extends CodeArea {
 
-    private static final String[] KEYWORDS = new String[]{"public", "class", "void", "static", "int", "String", "return"};
+    // The build compiles the editor text in place of the file it came from
+    private void setCurrentFile(File file) {
+        currentFile = file;
+        buildRunPanel.setEditorFile(file != null && largeDocument == null ? file.toPath() : null);
+    }
 
-    private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
-    private static final Pattern PATTERN = Pattern.compile("(?<KEYWORD>" + KEYWORD_PATTERN + ")");
+    private void startLoad(Task<?> task) {
+        loadTask = task;
+        loadProgress.progressProperty().bind(task.progressProperty());
+        loadingBar.setVisible(true);
+        loadingBar.setManaged(true);
+        FluxExecutors.IO.execute(task);
+    }
 
-    public CodeEditor() {
-        setParagraphGraphicFactory(LineNumberFactory.get(this)); // Add line numbers
-        textProperty().addListener((obs, oldText, newText) -> setStyleSpans(0, computeHighlighting(newText)));
+    private void finishLoad() {
+        loadTask = null;
+        loadProgress.progressProperty().unbind();
+        loadingBar.setVisible(false);
+        loadingBar.setManaged(false);
     }
 
-    private StyleSpans<Collection<String>> computeHighlighting(String text) {
-        Matcher matcher = PATTERN.matcher(text);
-        int lastKwEnd = 0;
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        while (matcher.find()) {
-            String styleClass = matcher.group("KEYWORD") != null ? "keyword" : null;
-            spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-            spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-            lastKwEnd = matcher.end();
+    private void cancelLoad() {
+        if (loadTask != null) {
+            loadTask.cancel();
         }
-        spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-        return spansBuilder.create();
     }
-}
-
-// File Explorer
-class FileExplorer extends TreeView<String> {
 
-    public FileExplorer(String rootPath) {
-        setRoot(createTree(new File(rootPath)));
+    // A save still writing the document from its file closes it once done
+    private void closeLargeDocument() {
+        if (largeDocument != null) {
+            PieceTable document = largeDocument;
+            largeSave.whenComplete((saved, e) -> onFxThread(() -> {
+                try {
+                    document.close();
+                } catch (IOException closeError) {
+                    terminal.appendLine("Error closing file: " + closeError.getMessage(), true);
+                }
+            }));
+            largeDocument = null;
+            root.setCenter(codeEditor);
+        }
     }
 
-    private TreeItem<String> createTree(File file) {
-        TreeItem<String> item = new TreeItem<>(file.getName());
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    item.getChildren().add(createTree(child));
-                }
+    private void saveFile(Stage primaryStage) {
+        if (currentFile != null && largeDocument != null) {
+            if (largeDocument.isDirty() || !currentFile.exists()) {
+                saveLarge(currentFile);
             }
+        } else if (currentFile != null) {
+            save(currentFile);
+        } else {
+            saveFileAs(primaryStage);
         }
-        return item;
     }
-}
-
-// Terminal/Console
-class Terminal extends TextArea {
 
-    public Terminal() {
-        setEditable(false);
+    private void saveFileAs(Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save File");
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file != null && largeDocument != null) {
+            setCurrentFile(file);
+            saveLarge(file);
+        } else if (file != null) {
+            setCurrentFile(file);
+            save(file);
+        }
     }
 
-    public void executeCommand(String command) {
-        try {
-            Process process = new ProcessBuilder(command.split(" ")).start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                appendText(line + "\n");
+    // Snapshots the editor text and writes it in the background, so typing carries on meanwhile
+    private void save(File file) {
+        saveService.save(file.toPath(), codeEditor.getText()).whenComplete((saved, e) -> {
+            if (e != null) {
+                terminal.appendLine("Error saving file: " + e.getMessage(), true);
             }
-        } catch (IOException e) {
-            appendText("Error executing command: " + e.getMessage() + "\n");
-        }
+        });
     }
-}
-
-// Build and Run Panel
-class BuildRunPanel extends VBox {
-
-    private final CodeEditor codeEditor;
-    private final Terminal terminal;
-
-    public BuildRunPanel(CodeEditor codeEditor, Terminal terminal) {
-        this.codeEditor = codeEditor;
-        this.terminal = terminal;
 
-        Button buildButton = new Button("Build");
-        buildButton.setOnAction(e -> buildProject());
-
-        Button runButton = new Button("Run");
-        runButton.setOnAction(e -> runProject());
-
-        getChildren().addAll(buildButton, runButton);
+    // Writes a snapshot of the large document in the background, so editing carries on meanwhile;
+    // only taking the snapshot and moving the file into place happen on the FX thread. Its saves
+    // run one after another, since each may replace the file the next reads from. The document
+    // is marked saved once the save succeeds, unless it was edited again in the meantime.
+    private void saveLarge(File file) {
+        PieceTable document = largeDocument;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        largeSave.whenComplete((previous, previousError) -> onFxThread(() -> {
+            PieceTable.Snapshot snapshot = document.snapshot();
+            FluxExecutors.IO.execute(() -> {
+                try {
+                    PieceTable.Written written = snapshot.writeTemp(file.toPath());
+                    onFxThread(() -> {
+                        try {
+                            document.commit(written);
+                            done.complete(null);
+                        } catch (IOException | RuntimeException e) {
+                            done.completeExceptionally(e);
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    done.completeExceptionally(e);
+                }
+            });
+        }));
+        largeSave = done;
+        done.whenComplete((saved, e) -> {
+            if (e != null) {
+                Platform.runLater(() -> terminal.appendLine("Error saving file: " + e.getMessage(), true));
+            }
+        });
     }
 
-    private void buildProject() {
-        // Save code to a temporary file and compile it
-        String code = codeEditor.getText();
-        // Implement file saving and compilation logic here
-        terminal.executeCommand("javac YourFileName.java");
+    // Queued rather than handed to runLater alone, so that stop() can run them while it waits
+    private void onFxThread(Runnable step) {
+        largeSaveSteps.add(step);
+        Platform.runLater(() -> {
+            Runnable next;
+            while ((next = largeSaveSteps.poll()) != null) {
+                next.run();
+            }
+        });
     }
 
-    private void runProject() {
-        // Execute the compiled Java program
-        terminal.executeCommand("java YourFileName");
+    public static void main(String[] args) {
+        launch(args);
     }
 }
 
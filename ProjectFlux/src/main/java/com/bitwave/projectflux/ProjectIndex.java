@@ -0,0 +1,108 @@
+package com.bitwave.projectflux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Persistent copy of a project's last scan, kept under ~/.projectflux/index. Opening a project
+// loads it and only rescans the directories that changed since it was written.
+// File layout: magic, version, root path, entry count, then per entry in snapshot order:
+// name, child count (-1 for files), size, modification time, content hash.
+final class ProjectIndex {
+    static final Path CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".projectflux", "index");
+
+    private static final int MAGIC = 0x50464958; // "PFIX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ProjectIndex() {
+    }
+
+    // Returns an up to date snapshot of the project and saves it for the next open
+    static ProjectSnapshot open(Path root) throws IOException {
+        Path projectRoot = root.toAbsolutePath().normalize();
+        ProjectSnapshot snapshot = new ParallelProjectScanner().scan(projectRoot, load(projectRoot));
+        try {
+            save(snapshot);
+        } catch (IOException e) {
+            e.printStackTrace(); // The project still opens, it just gets scanned in full next time
+        }
+        return snapshot;
+    }
+
+    // The saved snapshot, or null if there is none or it cannot be used
+    static ProjectSnapshot load(Path root) {
+        Path file = indexFile(root);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                return null;
+            }
+            int size = in.readInt();
+            String[] names = new String[size];
+            int[] parents = new int[size];
+            int[] firstChildren = new int[size];
+            int[] childCounts = new int[size];
+            long[] sizes = new long[size];
+            long[] lastModified = new long[size];
+            long[] contentHashes = new long[size];
+
+            parents[0] = -1;
+            int next = 1;
+            for (int i = 0; i < size; i++) {
+                names[i] = in.readUTF();
+                childCounts[i] = in.readInt();
+                sizes[i] = in.readLong();
+                lastModified[i] = in.readLong();
+                contentHashes[i] = in.readLong();
+                if (childCounts[i] >= 0) {
+                    // Entries are stored breadth-first, so a directory's children come next in order
+                    firstChildren[i] = next;
+                    for (int k = 0; k < childCounts[i]; k++) {
+                        parents[next++] = i;
+                    }
+                }
+            }
+            return new ProjectSnapshot(root, names, parents, firstChildren, childCounts, sizes, lastModified, contentHashes);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable project index " + file + ": " + e);
+            return null;
+        }
+    }
+
+    static void save(ProjectSnapshot snapshot) throws IOException {
+        Path file = indexFile(snapshot.root());
+        Files.createDirectories(CACHE_DIRECTORY);
+        Path temp = Files.createTempFile(CACHE_DIRECTORY, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(snapshot.root().toString());
+            out.writeInt(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                out.writeUTF(snapshot.name(i));
+                out.writeInt(snapshot.isDirectory(i) ? snapshot.childCount(i) : -1);
+                out.writeLong(snapshot.fileSize(i));
+                out.writeLong(snapshot.lastModified(i));
+                out.writeLong(snapshot.contentHash(i));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // One file per project root; the root is also stored inside to catch hash collisions
+    private static Path indexFile(Path root) {
+        String name = FileNames.of(root).replaceAll("[^A-Za-z0-9._-]", "_");
+        return CACHE_DIRECTORY.resolve(name + "-" + Integer.toHexString(root.toString().hashCode()) + ".idx");
+    }
+}
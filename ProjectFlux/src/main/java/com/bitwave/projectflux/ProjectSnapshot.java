@@ -0,0 +1,101 @@
+package com.bitwave.projectflux;
+
+import java.nio.file.Path;
+
+// Immutable result of a project scan, stored as parallel arrays rather than one object per
+// file so a million-entry project stays compact and can be shared freely between threads.
+// Entry 0 is the project root. Children of a directory are stored contiguously, directories
+// first and then by name, starting at firstChild(index).
+final class ProjectSnapshot {
+    private final Path root;
+    private final String[] names;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] childCounts; // -1 for files
+    private final long[] sizes;
+    private final long[] lastModified;
+    private final long[] contentHashes; // 0 for directories and files not hashed
+    private final int fileCount;
+
+    ProjectSnapshot(Path root, String[] names, int[] parents, int[] firstChildren, int[] childCounts,
+                    long[] sizes, long[] lastModified, long[] contentHashes) {
+        this.root = root;
+        this.names = names;
+        this.parents = parents;
+        this.firstChildren = firstChildren;
+        this.childCounts = childCounts;
+        this.sizes = sizes;
+        this.lastModified = lastModified;
+        this.contentHashes = contentHashes;
+
+        int files = 0;
+        for (int count : childCounts) {
+            if (count < 0) {
+                files++;
+            }
+        }
+        this.fileCount = files;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    // Number of entries, directories included
+    int size() {
+        return names.length;
+    }
+
+    int fileCount() {
+        return fileCount;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    // -1 for the root
+    int parent(int index) {
+        return parents[index];
+    }
+
+    boolean isDirectory(int index) {
+        return childCounts[index] >= 0;
+    }
+
+    int firstChild(int index) {
+        return firstChildren[index];
+    }
+
+    int childCount(int index) {
+        return Math.max(0, childCounts[index]);
+    }
+
+    long fileSize(int index) {
+        return sizes[index];
+    }
+
+    long lastModified(int index) {
+        return lastModified[index];
+    }
+
+    long contentHash(int index) {
+        return contentHashes[index];
+    }
+
+    // '/'-separated path from the project root, "" for the root itself
+    String relativePath(int index) {
+        if (index == 0) {
+            return "";
+        }
+        StringBuilder path = new StringBuilder(names[index]);
+        for (int i = parents[index]; i > 0; i = parents[i]) {
+            path.insert(0, '/').insert(0, names[i]);
+        }
+        return path.toString();
+    }
+
+    Path path(int index) {
+        return index == 0 ? root : root.resolve(relativePath(index));
+    }
+}
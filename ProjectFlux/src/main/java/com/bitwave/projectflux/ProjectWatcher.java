@@ -0,0 +1,281 @@
+package com.bitwave.projectflux;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Watches a project tree for changes. Every directory is registered with a WatchService on a
+// background thread, except inside ignored ones (build output and the like), so a build only
+// reports its output folder itself. Events are coalesced per path (create then delete
+// cancels out) and handed to the listener on the FX thread at most once per frame, so a build
+// writing thousands of files costs one batch, not thousands of tree updates. The frame timer
+// only runs while changes are waiting.
+// A created directory is reported once; its contents are not reported separately.
+// When the OS drops events, the affected directory is reported as RESCAN.
+final class ProjectWatcher implements Closeable {
+    enum Kind { CREATED, DELETED, MODIFIED, RESCAN }
+
+    static final class Change {
+        final Kind kind;
+        final Path path;
+        final boolean directory;
+
+        Change(Kind kind, Path path, boolean directory) {
+            this.kind = kind;
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+
+    private final Path root;
+    private final Consumer<List<Change>> listener;
+    private final WatchService watchService;
+    private final Thread thread;
+    private final AnimationTimer drain;
+
+    // Only touched by the watch thread
+    private final Map<WatchKey, Watched> watched = new HashMap<>();
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+
+    // Guarded by this
+    private Map<Path, Change> pending = new LinkedHashMap<>();
+    private Set<Path> pendingRescans = new LinkedHashSet<>();
+    // Set while the drain timer runs or is about to, so the watch thread schedules it at most once
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // The listener is called on the FX thread
+    ProjectWatcher(Path root, Consumer<List<Change>> listener) throws IOException {
+        this.root = root;
+        this.listener = listener;
+        this.watchService = this.root.getFileSystem().newWatchService();
+        this.thread = FluxExecutors.daemonThreads("flux-watcher").newThread(this::run);
+        this.drain = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (deliver()) {
+                    return;
+                }
+                // Changes are posted before the flag is checked, so any posted after this check
+                // find it cleared and start the timer again
+                draining.set(false);
+                if (!hasPending() || !draining.compareAndSet(false, true)) {
+                    stop();
+                }
+            }
+        };
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        drain.stop();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void run() {
+        try {
+            register(root, "", IgnoreRules.DEFAULT);
+            while (true) {
+                WatchKey key = watchService.take();
+                Watched directory = watched.get(key);
+                if (directory != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        try {
+                            handle(directory, event);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    forget(key);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(Watched directory, WatchEvent<?> event) throws IOException {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // Events were lost: pick up any new subdirectories and let listeners re-list
+            register(directory.path, directory.relativePath, directory.parentRules);
+            rescan(directory.path);
+            return;
+        }
+        Path path = directory.path.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            boolean wasDirectory = keys.containsKey(path);
+            if (wasDirectory) {
+                unregisterTree(path);
+            }
+            post(new Change(Kind.DELETED, path, wasDirectory));
+            return;
+        }
+
+        boolean isDirectory = Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            String relativePath = (directory.relativePath.isEmpty() ? "" : directory.relativePath + "/") + path.getFileName();
+            if (isDirectory && !directory.rules.isIgnored(relativePath, true)) {
+                register(path, relativePath, directory.rules);
+            }
+            post(new Change(Kind.CREATED, path, isDirectory));
+        } else if (!isDirectory) {
+            post(new Change(Kind.MODIFIED, path, false));
+        }
+    }
+
+    // Registers a directory and every non-ignored directory below it that is not registered yet
+    private void register(Path start, String startRelativePath, IgnoreRules startRules) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                String relativePath = startRelativePath;
+                IgnoreRules parentRules = startRules;
+                if (!dir.equals(start)) {
+                    Watched parent = watched.get(keys.get(dir.getParent()));
+                    relativePath = (parent.relativePath.isEmpty() ? "" : parent.relativePath + "/") + dir.getFileName();
+                    parentRules = parent.rules;
+                    if (parentRules.isIgnored(relativePath, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                if (!keys.containsKey(dir)) {
+                    try {
+                        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                        watched.put(key, new Watched(dir, relativePath, parentRules, parentRules.forDirectory(dir, relativePath)));
+                        keys.put(dir, key);
+                    } catch (IOException e) {
+                        return FileVisitResult.SKIP_SUBTREE; // Unreadable, or already gone again
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void unregisterTree(Path directory) {
+        keys.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(directory)) {
+                return false;
+            }
+            entry.getValue().cancel();
+            watched.remove(entry.getValue());
+            return true;
+        });
+    }
+
+    private void forget(WatchKey key) {
+        Watched directory = watched.remove(key);
+        if (directory != null) {
+            keys.remove(directory.path);
+        }
+    }
+
+    private synchronized void post(Change change) {
+        Change previous = pending.get(change.path);
+        if (previous == null) {
+            pending.put(change.path, change);
+        } else if (previous.kind == Kind.CREATED && change.kind == Kind.DELETED) {
+            pending.remove(change.path); // Came and went within one frame
+        } else if (previous.kind == Kind.CREATED && change.kind == Kind.MODIFIED) {
+            return;
+        } else if (previous.kind == Kind.DELETED && change.kind == Kind.CREATED) {
+            pending.put(change.path, new Change(Kind.MODIFIED, change.path, change.directory));
+        } else {
+            pending.put(change.path, change);
+        }
+        scheduleDrain();
+    }
+
+    private synchronized void rescan(Path directory) {
+        pendingRescans.add(directory);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                if (!closed) {
+                    drain.start();
+                }
+            });
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return !pending.isEmpty() || !pendingRescans.isEmpty();
+    }
+
+    // False if there was nothing to deliver
+    private boolean deliver() {
+        List<Change> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.size() + pendingRescans.size());
+            batch.addAll(pending.values());
+            for (Path directory : pendingRescans) {
+                batch.add(new Change(Kind.RESCAN, directory, true));
+            }
+            pending = new LinkedHashMap<>();
+            pendingRescans = new LinkedHashSet<>();
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        listener.accept(batch);
+        return true;
+    }
+
+    private static final class Watched {
+        final Path path;
+        final String relativePath;
+        final IgnoreRules parentRules;
+        final IgnoreRules rules;
+
+        Watched(Path path, String relativePath, IgnoreRules parentRules, IgnoreRules rules) {
+            this.path = path;
+            this.relativePath = relativePath;
+            this.parentRules = parentRules;
+            this.rules = rules;
+        }
+    }
+}
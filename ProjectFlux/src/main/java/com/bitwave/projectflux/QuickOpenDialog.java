@@ -0,0 +1,107 @@
+package com.bitwave.projectflux;
+
+import javafx.application.Platform;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.VBox;
+import javafx.stage.Window;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Go to File. Every keystroke queries the PathIndex on a background thread and only the answer
+// to the latest keystroke is shown, so typing never waits on the search.
+class QuickOpenDialog extends Dialog<Path> {
+    // A single thread keeps searches in keystroke order, so each one can narrow the previous result
+    private static final ExecutorService SEARCH = Executors.newSingleThreadExecutor(FluxExecutors.daemonThreads("flux-quick-open"));
+
+    private final PathIndex index;
+    private final TextField queryField = new TextField();
+    private final ListView<Integer> results = new ListView<>();
+    private final Label status = new Label();
+    private final AtomicInteger version = new AtomicInteger();
+    private PathIndex.Result lastResult; // Only touched on the search thread
+
+    QuickOpenDialog(Window owner, PathIndex index) {
+        this.index = index;
+        initOwner(owner);
+        setTitle("Go to File");
+        setHeaderText(null);
+
+        queryField.setPromptText("File name");
+        queryField.textProperty().addListener((obs, oldText, newText) -> search(newText));
+        // Arrow keys move through the results without leaving the text field
+        queryField.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.DOWN) {
+                results.getSelectionModel().selectNext();
+                event.consume();
+            } else if (event.getCode() == KeyCode.UP) {
+                results.getSelectionModel().selectPrevious();
+                event.consume();
+            }
+        });
+
+        results.setPrefSize(600, 400);
+        results.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(Integer id, boolean empty) {
+                super.updateItem(id, empty);
+                setText(empty || id == null ? null : index.fileName(id) + "    " + index.path(id));
+            }
+        });
+        results.setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2 && results.getSelectionModel().getSelectedItem() != null) {
+                setResult(index.resolve(results.getSelectionModel().getSelectedItem()));
+                close();
+            }
+        });
+
+        getDialogPane().setContent(new VBox(5, queryField, results, status));
+        getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        setResultConverter(button -> {
+            Integer selected = results.getSelectionModel().getSelectedItem();
+            return button == ButtonType.OK && selected != null ? index.resolve(selected) : null;
+        });
+        setOnShown(e -> queryField.requestFocus());
+        status.setText(index.size() + " files");
+    }
+
+    private void search(String query) {
+        int current = version.incrementAndGet();
+        if (query.isBlank()) {
+            results.getItems().clear();
+            status.setText(index.size() + " files");
+            return;
+        }
+        SEARCH.execute(() -> {
+            if (version.get() != current) {
+                return; // Superseded before it started
+            }
+            long started = System.nanoTime();
+            PathIndex.Result result;
+            try {
+                result = index.search(query, lastResult);
+            } catch (InterruptedException e) {
+                return;
+            }
+            lastResult = result;
+            long micros = (System.nanoTime() - started) / 1000;
+            Platform.runLater(() -> {
+                if (version.get() != current) {
+                    return;
+                }
+                results.getItems().setAll(Arrays.stream(result.top).boxed().toList());
+                results.getSelectionModel().selectFirst();
+                status.setText(result.matches.length + " of " + index.size() + " files, " + micros / 1000.0 + " ms");
+            });
+        });
+    }
+}
@@ -0,0 +1,171 @@
+package com.bitwave.projectflux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// The main class of the warm run JVM, see WarmRunner. It reads programs from stdin, one at a
+// time: the class files, the jars they use, the main class and the arguments. Each runs in a class loader of its
+// own, so nothing carries over from one run to the next except what the JDK itself keeps. The
+// program's System.out and System.err come back over stdout as frames, followed by an exit frame
+// once main and every thread it started have finished. Only uses java.base, since the worker
+// runs without the IDE's modules.
+final class RunWorker {
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+    static final int EXIT = 3; // followed by the exit code and whether the worker can be reused
+
+    private static DataOutputStream frames;
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        frames = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FrameStream(STDOUT), 8192), true, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FrameStream(STDERR), 8192), true, StandardCharsets.UTF_8);
+        // A program may end the JVM with System.exit, so what it printed last must still get out
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            out.flush();
+            err.flush();
+        }));
+
+        while (true) {
+            Map<String, byte[]> classes = new HashMap<>();
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    classes.put(name, bytes);
+                }
+            } catch (EOFException e) {
+                return; // The IDE is done with this worker
+            }
+            URL[] libraries = new URL[in.readInt()];
+            for (int i = 0; i < libraries.length; i++) {
+                libraries[i] = Path.of(in.readUTF()).toUri().toURL();
+            }
+            String mainClass = in.readUTF();
+            String[] programArgs = new String[in.readInt()];
+            for (int i = 0; i < programArgs.length; i++) {
+                programArgs[i] = in.readUTF();
+            }
+
+            System.setIn(new ByteArrayInputStream(new byte[0]));
+            System.setOut(out);
+            System.setErr(err);
+            ThreadGroup group = new ThreadGroup("program");
+            URLClassLoader jars = new URLClassLoader("libraries", libraries, ClassLoader.getPlatformClassLoader());
+            int exitCode = run(group, new MemoryClassLoader(classes, jars), mainClass, programArgs);
+            out.flush();
+            err.flush();
+            jars.close(); // Or the worker holds on to every jar it ever ran with
+            // Daemon threads still running would carry over into the next program
+            boolean reusable = group.activeCount() == 0;
+            synchronized (frames) {
+                frames.writeByte(EXIT);
+                frames.writeInt(exitCode);
+                frames.writeBoolean(reusable);
+                frames.flush();
+            }
+        }
+    }
+
+    // Like the java launcher: runs main on a thread called main, then waits for every non-daemon
+    // thread. Exits with 1 if main throws.
+    private static int run(ThreadGroup group, ClassLoader loader, String mainClass, String[] args) {
+        int[] exitCode = {0};
+        Thread main = new Thread(group, () -> {
+            try {
+                Method method = loader.loadClass(mainClass).getMethod("main", String[].class);
+                method.setAccessible(true); // The class need not be public
+                method.invoke(null, (Object) args);
+            } catch (InvocationTargetException e) {
+                System.err.print("Exception in thread \"main\" ");
+                e.getCause().printStackTrace();
+                exitCode[0] = 1;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("Error: cannot run " + mainClass + ": " + e);
+                exitCode[0] = 1;
+            }
+        }, "main");
+        main.setContextClassLoader(loader);
+        main.start();
+        try {
+            Thread waitingFor = main;
+            while (waitingFor != null) {
+                waitingFor.join();
+                waitingFor = null;
+                Thread[] threads = new Thread[group.activeCount() + 16];
+                int count = group.enumerate(threads);
+                for (int i = 0; i < count && waitingFor == null; i++) {
+                    if (!threads[i].isDaemon()) {
+                        waitingFor = threads[i];
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return exitCode[0];
+    }
+
+    // Turns everything written into frames of one kind on the worker's real stdout
+    private static final class FrameStream extends OutputStream {
+        private final int kind;
+
+        FrameStream(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            synchronized (frames) {
+                frames.writeByte(kind);
+                frames.writeInt(length);
+                frames.write(data, offset, length);
+                frames.flush();
+            }
+        }
+    }
+
+    // Defines the program's classes; everything else comes from its jars or the JDK
+    private static final class MemoryClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        MemoryClassLoader(Map<String, byte[]> classes, ClassLoader libraries) {
+            super("program", libraries);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
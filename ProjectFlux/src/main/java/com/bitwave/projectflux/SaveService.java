@@ -0,0 +1,207 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Saves files in the background. The caller hands over a snapshot of the text, which is encoded
+// as UTF-8 straight into a pooled direct buffer and written through a FileChannel to a temporary
+// file next to the target, then moved over it in one step: a crash mid-save leaves the old file
+// whole instead of a truncated one. Saves of different files run in parallel. A save of a file
+// that is already being written waits, and only the newest of any saves waiting for the same
+// file is written; every caller's future completes once text at least as new is on disk. At most
+// PARALLELISM files are written at once, however many are saved together.
+final class SaveService {
+    // How far a save goes to survive power loss, not just a crash of the IDE
+    enum Sync {
+        NONE, // Leave it to the OS to write the file out when it likes
+        FILE, // Force the file's contents to disk before it replaces the target
+        DIRECTORY // Also force the directory, so the replacement itself is on disk
+    }
+
+    // Saves wait on the disk rather than the CPU; this keeps an SSD's queue busy without a thread per file
+    static final int PARALLELISM = 8;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(PARALLELISM);
+
+    private final Sync sync;
+    private final ExecutorService writers = Executors.newFixedThreadPool(PARALLELISM, FluxExecutors.daemonThreads("flux-save"));
+    private final Map<Path, Slot> slots = new HashMap<>(); // Files being written, guarded by this
+
+    private static final class Slot {
+        String pending; // The newest text not written yet, or null
+        CompletableFuture<Void> pendingDone;
+    }
+
+    SaveService(Sync sync) {
+        this.sync = sync;
+    }
+
+    // Returns at once. Completes exceptionally with the IOException if the save fails.
+    CompletableFuture<Void> save(Path target, String text) {
+        Path file = target.toAbsolutePath().normalize();
+        synchronized (this) {
+            Slot slot = slots.get(file);
+            boolean idle = slot == null;
+            if (idle) {
+                slot = new Slot();
+                slots.put(file, slot);
+            }
+            if (slot.pending == null) {
+                slot.pendingDone = new CompletableFuture<>();
+            }
+            slot.pending = text; // Replaces any older text that was still waiting
+            CompletableFuture<Void> done = slot.pendingDone;
+            if (idle) {
+                Slot writing = slot;
+                writers.execute(() -> drain(file, writing));
+            }
+            return done;
+        }
+    }
+
+    // Waits for every save to finish, e.g. before the IDE exits. False if some are still running.
+    synchronized boolean awaitIdle(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (!slots.isEmpty()) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    // Writes whatever is pending for the file until nothing is
+    private void drain(Path file, Slot slot) {
+        while (true) {
+            String text;
+            CompletableFuture<Void> done;
+            synchronized (this) {
+                if (slot.pending == null) {
+                    slots.remove(file);
+                    notifyAll();
+                    return;
+                }
+                text = slot.pending;
+                done = slot.pendingDone;
+                slot.pending = null;
+                slot.pendingDone = null;
+            }
+            try {
+                write(file, text);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void write(Path file, String text) throws IOException {
+        Path target = Files.isSymbolicLink(file) ? file.toRealPath() : file; // Replace what the link points to, not the link
+        Path temp = newTempFile(target);
+        ByteBuffer buffer = BUFFERS.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                encode(text, buffer, out);
+                if (sync != Sync.NONE) {
+                    out.force(true);
+                }
+            }
+            if (Files.exists(target)) {
+                copyPermissions(target, temp);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            buffer.clear();
+            BUFFERS.offer(buffer); // Dropped if the pool is full
+        }
+        if (sync == Sync.DIRECTORY) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    // One buffer at a time, however large the text
+    private static void encode(String text, ByteBuffer buffer, FileChannel out) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(text);
+        boolean flushed = false;
+        while (!flushed) {
+            buffer.clear();
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow()) {
+                flushed = encoder.flush(buffer).isUnderflow();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    // A new empty file next to the target, to write the text to before it replaces the target.
+    // Files.createTempFile would make it private to the user, and a new target would stay so;
+    // this one gets the permissions any new file in the directory gets.
+    static Path newTempFile(Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        while (true) {
+            Path temp = directory.resolve(target.getFileName() + "." + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36) + ".tmp");
+            try {
+                Files.newByteChannel(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+                return temp;
+            } catch (FileAlreadyExistsException e) {
+                // Taken; try another name
+            }
+        }
+    }
+
+    // An existing target keeps its permissions
+    static void copyPermissions(Path from, Path to) {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system; the file keeps the permissions it was created with
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows cannot open a directory as a channel; its file system journals the rename itself
+        }
+    }
+}
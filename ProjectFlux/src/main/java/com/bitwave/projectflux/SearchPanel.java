@@ -0,0 +1,161 @@
+package com.bitwave.projectflux;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.PatternSyntaxException;
+
+// Find in Files over a TrigramIndex. The search runs in the background and hits are moved into
+// the list once per frame while it is still going, so the first results show up right away.
+// Starting a new search cancels the one in flight. Files with unsaved changes are searched as
+// their editors show them.
+class SearchPanel extends VBox {
+    private static final int MAX_HITS = 10_000;
+
+    private final TextField queryField = new TextField();
+    private final CheckBox regexBox = new CheckBox("Regex");
+    private final CheckBox matchCaseBox = new CheckBox("Match case");
+    private final Label status = new Label("No project indexed");
+    private final ListView<TrigramIndex.Hit> results = new ListView<>();
+    private final AnimationTimer drain;
+    private final Supplier<Map<Path, String>> unsaved;
+
+    private TrigramIndex index;
+    // Each search gets its own queue and flag, so a cancelled search can never leak hits into the next
+    private ConcurrentLinkedQueue<TrigramIndex.Hit> pending = new ConcurrentLinkedQueue<>();
+    private AtomicBoolean cancelled = new AtomicBoolean();
+
+    // The opener gets the file and 1-based line of a double-clicked hit. unsaved gives the text of
+    // open files that differs from the disk, by DocumentRegistry.key, on the FX thread.
+    SearchPanel(BiConsumer<Path, Integer> opener, Supplier<Map<Path, String>> unsaved) {
+        super(5);
+        this.unsaved = unsaved;
+        queryField.setPromptText("Find in Files");
+        queryField.setOnAction(e -> search());
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> search());
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+        HBox controls = new HBox(10, queryField, regexBox, matchCaseBox, searchButton);
+
+        results.setPrefHeight(180);
+        results.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(TrigramIndex.Hit hit, boolean empty) {
+                super.updateItem(hit, empty);
+                setText(empty || hit == null ? null
+                        : index.root().relativize(hit.file) + ":" + hit.line + ": " + hit.text.strip());
+            }
+        });
+        results.setOnMouseClicked(event -> {
+            TrigramIndex.Hit hit = results.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && hit != null) {
+                opener.accept(hit.file, hit.line);
+            }
+        });
+
+        drain = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                List<TrigramIndex.Hit> batch = new ArrayList<>();
+                for (TrigramIndex.Hit hit; (hit = pending.poll()) != null; ) {
+                    batch.add(hit);
+                }
+                if (!batch.isEmpty()) {
+                    results.getItems().addAll(batch);
+                }
+            }
+        };
+
+        getChildren().addAll(controls, status, results);
+    }
+
+    void setIndex(TrigramIndex index) {
+        cancelled.set(true);
+        cancelled = new AtomicBoolean();
+        pending = new ConcurrentLinkedQueue<>();
+        drain.stop();
+        this.index = index;
+        results.getItems().clear();
+        status.setText(index == null ? "Indexing project..." : "Indexed " + index.fileCount() + " files");
+    }
+
+    void focusQuery() {
+        queryField.requestFocus();
+        queryField.selectAll();
+    }
+
+    private void search() {
+        String text = queryField.getText();
+        if (index == null || text.isEmpty()) {
+            return;
+        }
+        SearchQuery query;
+        try {
+            query = new SearchQuery(text, regexBox.isSelected(), matchCaseBox.isSelected());
+        } catch (PatternSyntaxException e) {
+            status.setText("Invalid regex: " + e.getDescription());
+            return;
+        }
+
+        cancelled.set(true);
+        AtomicBoolean searchCancelled = new AtomicBoolean();
+        ConcurrentLinkedQueue<TrigramIndex.Hit> hits = new ConcurrentLinkedQueue<>();
+        AtomicInteger hitCount = new AtomicInteger();
+        cancelled = searchCancelled;
+        pending = hits;
+        results.getItems().clear();
+        status.setText("Searching...");
+        drain.start();
+
+        TrigramIndex searchIndex = index;
+        Map<Path, String> unsavedText = unsaved.get();
+        long started = System.nanoTime();
+        FluxExecutors.IO.execute(() -> {
+            int candidates;
+            try {
+                candidates = searchIndex.search(query, unsavedText, hit -> {
+                    hits.add(hit);
+                    if (hitCount.incrementAndGet() >= MAX_HITS) {
+                        searchCancelled.set(true);
+                    }
+                }, searchCancelled);
+            } catch (InterruptedException | RuntimeException e) {
+                Platform.runLater(() -> {
+                    if (cancelled == searchCancelled) {
+                        drain.stop();
+                        status.setText("Search failed: " + e.getMessage());
+                    }
+                });
+                return;
+            }
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            Platform.runLater(() -> {
+                if (cancelled != searchCancelled) {
+                    return; // A newer search took over
+                }
+                drain.handle(0); // Flush the last hits before the timer stops
+                drain.stop();
+                status.setText((hitCount.get() >= MAX_HITS ? "Stopped after " : "") + hitCount.get() + " matches, "
+                        + candidates + " of " + searchIndex.fileCount() + " files read, " + millis + " ms");
+            });
+        });
+    }
+}
@@ -0,0 +1,191 @@
+package com.bitwave.projectflux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A Find in Files query, either literal text or a regex. Matches never span lines.
+final class SearchQuery {
+    final String text;
+    final boolean regex;
+    final boolean matchCase;
+    private final Pattern linePattern; // null for case-sensitive literal text
+    private final Pattern textPattern; // the same with ^ and $ matching at line breaks
+
+    // Throws PatternSyntaxException for an invalid regex
+    SearchQuery(String text, boolean regex, boolean matchCase) {
+        this.text = text;
+        this.regex = regex;
+        this.matchCase = matchCase;
+        int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        String expression = regex ? text : Pattern.quote(text);
+        if (regex || !matchCase) {
+            linePattern = Pattern.compile(expression, flags);
+            textPattern = Pattern.compile(expression, flags | Pattern.MULTILINE);
+        } else {
+            linePattern = null;
+            textPattern = null;
+        }
+    }
+
+    // Start of the first match at or after from, searching across line breaks, or -1. Any match
+    // within a line is found here too, so lines before the result cannot match.
+    int findFrom(String content, int from) {
+        if (textPattern == null) {
+            return content.indexOf(text, from);
+        }
+        Matcher matcher = textPattern.matcher(content);
+        return matcher.find(from) ? matcher.start() : -1;
+    }
+
+    // Column of the first match inside content[lineStart, lineEnd), or -1
+    int findInLine(String content, int lineStart, int lineEnd) {
+        if (linePattern == null) {
+            int index = content.indexOf(text, lineStart);
+            return index >= 0 && index + text.length() <= lineEnd ? index - lineStart : -1;
+        }
+        Matcher matcher = linePattern.matcher(content).region(lineStart, lineEnd);
+        return matcher.find() ? matcher.start() - lineStart : -1;
+    }
+
+    // Trigrams every matching line must contain. Case-folding only covers ASCII in the index, so
+    // unless the whole query is case-sensitive literal text, trigrams with other bytes are left out.
+    int[] trigrams() {
+        List<String> literals = regex ? requiredLiterals(text) : List.of(text);
+        boolean asciiOnly = regex || !matchCase;
+        int[] result = new int[0];
+        for (String literal : literals) {
+            int[] trigrams = TrigramIndex.trigrams(literal.getBytes(StandardCharsets.UTF_8), asciiOnly);
+            int offset = result.length;
+            result = Arrays.copyOf(result, offset + trigrams.length);
+            System.arraycopy(trigrams, 0, result, offset, trigrams.length);
+        }
+        return result;
+    }
+
+    // Runs of plain characters that any match of the regex must contain. Conservative: groups,
+    // classes and escapes end a run, an optional character is dropped, and alternation anywhere
+    // means nothing is required. Text quoted with \Q...\E counts as plain.
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0) {
+            return literals;
+        }
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(++i);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i + 1);
+                    end = end < 0 ? regex.length() : end;
+                    run.append(regex, i + 1, end); // Quoted text is plain
+                    i = end + 1;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    flush(run, literals); // \d, \w, \b, \x41 and friends
+                    i = skipEscapeArgument(regex, i);
+                } else {
+                    run.append(escaped);
+                }
+            } else if (c == '*' || c == '?' || c == '{') {
+                // The previous character may be absent
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                flush(run, literals);
+                if (c == '{') {
+                    i = skipTo(regex, i, '}');
+                }
+            } else if (c == '[') {
+                flush(run, literals);
+                i = skipTo(regex, i, ']');
+            } else if (c == '(') {
+                flush(run, literals);
+                i = skipGroup(regex, i);
+            } else if (c == '.' || c == '^' || c == '$' || c == '+' || c == ')') {
+                // '+' keeps the previous character: it occurs at least once
+                flush(run, literals);
+            } else {
+                run.append(c);
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() >= 3) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    // The end of what an escape takes after its letter at i, such as the 41 of \x41, so that none
+    // of it is taken for plain text
+    private static int skipEscapeArgument(String regex, int i) {
+        char escape = regex.charAt(i);
+        int next = i + 1;
+        boolean braced = next < regex.length() && regex.charAt(next) == '{';
+        switch (escape) {
+            case 'x':
+                return braced ? skipTo(regex, next, '}') : Math.min(i + 2, regex.length() - 1);
+            case 'u':
+                return Math.min(i + 4, regex.length() - 1);
+            case 'c':
+                return Math.min(i + 1, regex.length() - 1);
+            case 'p':
+            case 'P':
+                return braced ? skipTo(regex, next, '}') : Math.min(i + 1, regex.length() - 1); // \p{Lu} or \pL
+            case 'N':
+            case 'b':
+                return braced ? skipTo(regex, next, '}') : i; // \N{name}, \b{g}
+            case 'k':
+                return next < regex.length() && regex.charAt(next) == '<' ? skipTo(regex, next, '>') : i;
+            default:
+                if (Character.isDigit(escape)) {
+                    // An octal escape after \0, else a back reference; either way the digits belong to it
+                    while (i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    private static int skipTo(String regex, int i, char close) {
+        for (i++; i < regex.length() && regex.charAt(i) != close; i++) {
+            if (regex.charAt(i) == '\\') {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    // A group may be optional or repeated as a whole, so nothing inside it is required
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipTo(regex, i, ']');
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                break;
+            }
+        }
+        // A quantifier after the group applies to the group, not to the run that follows
+        if (i + 1 < regex.length() && "*?+{".indexOf(regex.charAt(i + 1)) >= 0) {
+            i++;
+            if (regex.charAt(i) == '{') {
+                i = skipTo(regex, i, '}');
+            }
+        }
+        return i;
+    }
+}
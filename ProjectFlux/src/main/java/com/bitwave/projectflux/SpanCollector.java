@@ -0,0 +1,47 @@
+package com.bitwave.projectflux;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.Collection;
+
+// Turns tokens into one StyleSpans run, sharing one style collection per interned style id.
+// Token offsets are relative to the current paragraph start, which is the whole text when
+// lexing in one pass.
+final class SpanCollector implements JavaLexer.TokenSink {
+    private final StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+    private int paragraphStart;
+    private int lastEnd;
+
+    @Override
+    public void token(int start, int length, int style) {
+        if (paragraphStart + start > lastEnd) {
+            fillTo(paragraphStart + start);
+        }
+        builder.add(syntax.styleClasses(style), length);
+        lastEnd += length;
+    }
+
+    void startParagraph() {
+        paragraphStart = lastEnd;
+    }
+
+    void endParagraph(int length) {
+        fillTo(paragraphStart + length);
+    }
+
+    // Always adds the gap, even if empty, so create() has at least one span
+    void fillTo(int end) {
+        builder.add(syntax.styleClasses(0), end - lastEnd);
+        lastEnd = end;
+    }
+
+    void newline() {
+        builder.add(syntax.styleClasses(0), 1);
+        lastEnd++;
+    }
+
+    StyleSpans<Collection<String>> create() {
+        return builder.create();
+    }
+}
@@ -0,0 +1,370 @@
+package com.bitwave.projectflux;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.ListChangeListener;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TextArea;
+import javafx.util.Duration;
+import org.fxmisc.richtext.StyleClassedTextArea;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Keeps editors only for the tabs in use. A tab not looked at for a while, or beyond the number
+// of editors or characters allowed, has its editor dropped, along with its styling and undo
+// history. Only the caret and scroll position are kept, plus either the file's path, when the
+// document is clean and can be read back, or its text deflated to a fraction of the size. The
+// editor is made again when the tab is selected. So memory grows with the tabs being worked in,
+// not with the tabs open. A tab's file is its user data, a Path, and a tab whose edits are not
+// tracked by a DirtyState counts as unsaved. The selected tab is never hibernated. FX thread only.
+final class TabHibernator<E extends Node> {
+    static final Duration DEFAULT_IDLE = Duration.minutes(10);
+    static final int DEFAULT_MAX_AWAKE = 16;
+    static final long DEFAULT_MAX_AWAKE_CHARS = 16L * 1024 * 1024;
+
+    // How the hibernator makes and reads one kind of editor
+    interface Editors<E extends Node> {
+        // A new editor holding text, with the app's listeners on it
+        E create(Tab tab, String text);
+
+        String text(E editor);
+
+        int length(E editor);
+
+        int caret(E editor);
+
+        double scroll(E editor);
+
+        void restore(E editor, int caret, double scroll);
+    }
+
+    private final TabPane tabPane;
+    private final Editors<E> editors;
+    private final long idleMillis;
+    private final int maxAwake;
+    private final long maxAwakeChars;
+    private final Map<Tab, Entry<E>> entries = new HashMap<>();
+    private BiConsumer<Tab, String> reloaded = (tab, text) -> { };
+
+    private static final class Entry<E> {
+        E editor; // null while hibernating
+        long lastViewed; // When the tab was last selected or left
+        // Kept while hibernating
+        Path file; // Read back on waking, if the document was clean
+        int caret;
+        double scroll;
+        int textHash; // Of a clean document, to tell whether the file changed meanwhile
+        CompletableFuture<Deflated> deflated; // Of a document with unsaved changes, else null
+
+        Entry(E editor) {
+            this.editor = editor;
+        }
+    }
+
+    private static final class Deflated {
+        final byte[] bytes;
+        final int length; // Of the UTF-8 it inflates to
+
+        Deflated(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    TabHibernator(TabPane tabPane, Editors<E> editors) {
+        this(tabPane, editors, DEFAULT_IDLE, DEFAULT_MAX_AWAKE, DEFAULT_MAX_AWAKE_CHARS);
+    }
+
+    TabHibernator(TabPane tabPane, Editors<E> editors, Duration idle, int maxAwake, long maxAwakeChars) {
+        this.tabPane = tabPane;
+        this.editors = editors;
+        this.idleMillis = (long) idle.toMillis();
+        this.maxAwake = maxAwake;
+        this.maxAwakeChars = maxAwakeChars;
+
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            if (oldTab != null && entries.containsKey(oldTab)) {
+                entries.get(oldTab).lastViewed = System.currentTimeMillis();
+            }
+            if (newTab != null && entries.containsKey(newTab)) {
+                try {
+                    wake(newTab);
+                } catch (IOException e) {
+                    // The tab says so; tried again the next time it is selected
+                }
+            }
+            trim();
+        });
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) change -> {
+            while (change.next()) {
+                for (Tab tab : change.getRemoved()) {
+                    entries.remove(tab);
+                }
+            }
+        });
+        Timeline idleCheck = new Timeline(new KeyFrame(Duration.millis(Math.max(10_000, idleMillis / 4)), e -> trim()));
+        idleCheck.setCycleCount(Animation.INDEFINITE);
+        idleCheck.play();
+    }
+
+    // Called with a clean document's tab and new text when its file changed while it hibernated
+    void onReloaded(BiConsumer<Tab, String> reloaded) {
+        this.reloaded = reloaded;
+    }
+
+    // Makes the editor for a tab just opened on text and puts it in the tab. Add the tab to the
+    // pane afterwards.
+    E attach(Tab tab, String text) {
+        E editor = editors.create(tab, text);
+        tab.setContent(editor);
+        Entry<E> entry = new Entry<>(editor);
+        entry.lastViewed = System.currentTimeMillis();
+        entries.put(tab, entry);
+        return editor;
+    }
+
+    // The tab's editor, made again if the tab is hibernating. Throws if the tab's file cannot be
+    // read back, in which case the tab shows the error instead.
+    E editor(Tab tab) throws IOException {
+        wake(tab);
+        return entries.get(tab).editor;
+    }
+
+    // The tab's text, without waking it
+    String text(Tab tab) {
+        Entry<E> entry = entries.get(tab);
+        if (entry.editor != null) {
+            return editors.text(entry.editor);
+        }
+        if (entry.deflated != null) {
+            return inflate(entry.deflated.join());
+        }
+        try {
+            return Files.readString(entry.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isHibernating(Tab tab) {
+        Entry<E> entry = entries.get(tab);
+        return entry != null && entry.editor == null;
+    }
+
+    // Hibernates the tabs not viewed for the idle time, then the least recently used ones until
+    // the editors left are within both budgets
+    void trim() {
+        Tab selected = tabPane.getSelectionModel().getSelectedItem();
+        long now = System.currentTimeMillis();
+        if (selected != null && entries.containsKey(selected)) {
+            entries.get(selected).lastViewed = now;
+        }
+        int awake = 0;
+        long awakeChars = 0;
+        List<Tab> candidates = new ArrayList<>();
+        for (Map.Entry<Tab, Entry<E>> mapEntry : entries.entrySet()) {
+            Entry<E> entry = mapEntry.getValue();
+            if (entry.editor == null) {
+                continue;
+            }
+            if (mapEntry.getKey() != selected && now - entry.lastViewed >= idleMillis) {
+                hibernate(mapEntry.getKey(), entry);
+                continue;
+            }
+            awake++;
+            awakeChars += editors.length(entry.editor);
+            if (mapEntry.getKey() != selected) {
+                candidates.add(mapEntry.getKey());
+            }
+        }
+        candidates.sort(Comparator.comparingLong(tab -> entries.get(tab).lastViewed));
+        Iterator<Tab> leastRecent = candidates.iterator();
+        while ((awake > maxAwake || awakeChars > maxAwakeChars) && leastRecent.hasNext()) {
+            Tab tab = leastRecent.next();
+            Entry<E> entry = entries.get(tab);
+            awake--;
+            awakeChars -= editors.length(entry.editor);
+            hibernate(tab, entry);
+        }
+    }
+
+    private void hibernate(Tab tab, Entry<E> entry) {
+        E editor = entry.editor;
+        entry.caret = editors.caret(editor);
+        entry.scroll = editors.scroll(editor);
+        String text = editors.text(editor);
+        DirtyState state = DirtyState.of(tab);
+        entry.file = tab.getUserData() instanceof Path && state != null && !state.isDirty() ? (Path) tab.getUserData() : null;
+        if (entry.file != null) {
+            entry.textHash = hash(text);
+            entry.deflated = null;
+        } else {
+            entry.deflated = CompletableFuture.supplyAsync(() -> deflate(text), FluxExecutors.COMPUTE);
+        }
+        entry.editor = null;
+        tab.setContent(null);
+    }
+
+    private void wake(Tab tab) throws IOException {
+        Entry<E> entry = entries.get(tab);
+        entry.lastViewed = System.currentTimeMillis();
+        if (entry.editor != null) {
+            return;
+        }
+        String text;
+        boolean changed = false;
+        if (entry.deflated != null) {
+            text = inflate(entry.deflated.join());
+        } else {
+            try {
+                text = Files.readString(entry.file);
+            } catch (IOException e) {
+                tab.setContent(new Label("Cannot read " + entry.file + ": " + e.getMessage()));
+                throw e;
+            }
+            changed = hash(text) != entry.textHash;
+        }
+        E editor = editors.create(tab, text);
+        entry.editor = editor;
+        entry.deflated = null;
+        tab.setContent(editor);
+        editors.restore(editor, Math.min(entry.caret, text.length()), entry.scroll);
+        if (changed) {
+            reloaded.accept(tab, text);
+        }
+    }
+
+    private static Deflated deflate(String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(utf8);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, utf8.length / 4));
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return new Deflated(out.toByteArray(), utf8.length);
+    }
+
+    private static String inflate(Deflated deflated) {
+        byte[] utf8 = new byte[deflated.length];
+        Inflater inflater = new Inflater();
+        inflater.setInput(deflated.bytes);
+        try {
+            int read = 0;
+            while (read < utf8.length && !inflater.finished()) {
+                read += inflater.inflate(utf8, read, utf8.length - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e); // Made by deflate, so cannot happen
+        } finally {
+            inflater.end();
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(String text) {
+        CRC32C crc = new CRC32C();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    static Editors<TextArea> textAreas(BiConsumer<Tab, TextArea> setUp) {
+        return new Editors<>() {
+            @Override
+            public TextArea create(Tab tab, String text) {
+                TextArea editor = new TextArea(text);
+                setUp.accept(tab, editor);
+                return editor;
+            }
+
+            @Override
+            public String text(TextArea editor) {
+                return editor.getText();
+            }
+
+            @Override
+            public int length(TextArea editor) {
+                return editor.getLength();
+            }
+
+            @Override
+            public int caret(TextArea editor) {
+                return editor.getCaretPosition();
+            }
+
+            @Override
+            public double scroll(TextArea editor) {
+                return editor.getScrollTop();
+            }
+
+            @Override
+            public void restore(TextArea editor, int caret, double scroll) {
+                editor.positionCaret(caret);
+                editor.setScrollTop(scroll);
+            }
+        };
+    }
+
+    static Editors<StyleClassedTextArea> styledAreas(BiConsumer<Tab, StyleClassedTextArea> setUp) {
+        return new Editors<>() {
+            @Override
+            public StyleClassedTextArea create(Tab tab, String text) {
+                StyleClassedTextArea editor = new StyleClassedTextArea();
+                editor.replaceText(text);
+                editor.getUndoManager().forgetHistory(); // Loading the text is not an edit to undo
+                setUp.accept(tab, editor);
+                return editor;
+            }
+
+            @Override
+            public String text(StyleClassedTextArea editor) {
+                return editor.getText();
+            }
+
+            @Override
+            public int length(StyleClassedTextArea editor) {
+                return editor.getLength();
+            }
+
+            @Override
+            public int caret(StyleClassedTextArea editor) {
+                return editor.getCaretPosition();
+            }
+
+            @Override
+            public double scroll(StyleClassedTextArea editor) {
+                return editor.getEstimatedScrollY();
+            }
+
+            @Override
+            public void restore(StyleClassedTextArea editor, int caret, double scroll) {
+                editor.moveTo(caret);
+                editor.scrollYToPixel(scroll);
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package com.bitwave.projectflux;
+
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Terminal/console for commands and the programs the IDE runs, shared by ProjectFluxv4 and v5
+class Terminal extends ConsoleView {
+
+    private final List<Execution> running = new ArrayList<>(); // FX thread only
+
+    public Terminal() {
+        super(DEFAULT_MAX_LINES);
+    }
+
+    // Starts the command and returns at once. Output is shown as it arrives, stderr in red.
+    public void executeCommand(String command) {
+        LineWriter stdout = newWriter(false);
+        LineWriter stderr = newWriter(true);
+        ProcessRunner runner;
+        try {
+            runner = ProcessRunner.start(List.of(command.trim().split("\\s+")), null,
+                    (text, isStderr) -> (isStderr ? stderr : stdout).write(text));
+        } catch (IOException e) {
+            appendLine("Error executing command: " + e.getMessage(), true);
+            return;
+        }
+        watch(runner, () -> {
+            stdout.flush();
+            stderr.flush();
+        });
+    }
+
+    // Runs compiled classes (binary name -> class file) in the warm JVM, or in a new one if fresh is
+    // set or the warm one cannot be started, with the jars in libraries on its class path. Writes the
+    // classes out, so call it off the FX thread.
+    public void runProgram(WarmRunner runner, Map<String, byte[]> classes, List<Path> libraries, String mainClass,
+                           boolean fresh, long timeoutMillis) {
+        if (!fresh) {
+            try {
+                Execution run = runner.run(classes, libraries, mainClass, List.of(),
+                        new ConsoleOutputStream(this, false), new ConsoleOutputStream(this, true));
+                run.killAfter(timeoutMillis);
+                watch(run, () -> { });
+                return;
+            } catch (IOException e) {
+                appendLine("Cannot start the warm JVM (" + e.getMessage() + "), running in a new one", true);
+            }
+        }
+        LineWriter stdout = newWriter(false);
+        LineWriter stderr = newWriter(true);
+        try {
+            Execution process = WarmRunner.runFresh(classes, libraries, mainClass, List.of(),
+                    (text, isStderr) -> (isStderr ? stderr : stdout).write(text));
+            process.killAfter(timeoutMillis);
+            watch(process, () -> {
+                stdout.flush();
+                stderr.flush();
+            });
+        } catch (IOException e) {
+            appendLine("Cannot run " + mainClass + ": " + e.getMessage(), true);
+        }
+    }
+
+    // Kills every program started from this terminal that is still running
+    public void stopAll() {
+        running.forEach(Execution::kill);
+    }
+
+    // Reports the exit code once flush has pushed out the last of the output; any thread
+    private void watch(Execution execution, Runnable flush) {
+        Platform.runLater(() -> running.add(execution));
+        execution.onExit().thenAccept(exitCode -> {
+            flush.run();
+            appendLine(execution.wasKilled() ? "[Stopped]" : "[Exited with code " + exitCode + "]", exitCode != 0);
+            Platform.runLater(() -> running.remove(execution));
+        });
+    }
+}
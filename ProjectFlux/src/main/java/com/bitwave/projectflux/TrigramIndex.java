@@ -0,0 +1,402 @@
+package com.bitwave.projectflux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Trigram inverted index for Find in Files. Every run of three bytes on one line, with ASCII
+// folded to lower case, maps to a delta/varint compressed list of the files that contain it.
+// A query only opens the files that hold all of its trigrams and verifies them line by line.
+// Re-indexing a saved file retires its old id and appends a new one. Thread-safe.
+final class TrigramIndex {
+    static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    // Files are read in parallel a batch at a time and merged in id order, which keeps every
+    // posting list sorted without holding more than one batch of trigram sets in memory
+    private static final int BATCH = 512;
+    private static final ThreadLocal<Extractor> EXTRACTOR = ThreadLocal.withInitial(Extractor::new);
+
+    static final class Hit {
+        final Path file;
+        final int line; // 1-based
+        final int column; // 0-based
+        final String text;
+
+        Hit(Path file, int line, int column, String text) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.text = text;
+        }
+    }
+
+    private final Path root;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Path> files = new ArrayList<>();
+    private final Map<Path, Integer> ids = new HashMap<>();
+    private final BitSet retired = new BitSet();
+    private final Map<Integer, PostingList> postings = new HashMap<>();
+
+    private TrigramIndex(Path root) {
+        this.root = root;
+    }
+
+    static TrigramIndex build(ProjectSnapshot snapshot) throws InterruptedException {
+        TrigramIndex index = new TrigramIndex(snapshot.root());
+        List<Path> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!snapshot.isDirectory(i) && snapshot.fileSize(i) <= MAX_FILE_SIZE) {
+                batch.add(snapshot.path(i));
+                if (batch.size() == BATCH) {
+                    index.addAll(batch);
+                    batch.clear();
+                }
+            }
+        }
+        index.addAll(batch);
+        return index;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    int fileCount() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Re-indexes a file after it was saved. Files outside the project are ignored.
+    void update(Path file) {
+        if (!file.startsWith(root)) {
+            return;
+        }
+        int[] trigrams = read(file);
+        lock.writeLock().lock();
+        try {
+            retire(file);
+            if (trigrams != null) {
+                add(file, trigrams);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Path file) {
+        lock.writeLock().lock();
+        try {
+            retire(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Finds matching lines, passing each hit to the sink from a worker thread as soon as it is
+    // found. Stops early once cancelled. Returns the number of candidate files that were read.
+    int search(SearchQuery query, Consumer<Hit> sink, AtomicBoolean cancelled) throws InterruptedException {
+        return search(query, Map.of(), sink, cancelled);
+    }
+
+    // As above, but files in unsaved (by DocumentRegistry.key) are searched in that text instead of
+    // what is on disk. The index only knows the disk, so every one of them is searched.
+    int search(SearchQuery query, Map<Path, String> unsaved, Consumer<Hit> sink, AtomicBoolean cancelled)
+            throws InterruptedException {
+        List<Path> candidates = candidates(query.trigrams());
+        if (!unsaved.isEmpty()) {
+            Path project = DocumentRegistry.key(root);
+            Set<Path> listed = new HashSet<>();
+            for (Path file : candidates) {
+                listed.add(DocumentRegistry.key(file));
+            }
+            for (Path file : unsaved.keySet()) {
+                if (file.startsWith(project) && !listed.contains(file)) {
+                    candidates.add(file);
+                }
+            }
+        }
+        try {
+            FluxExecutors.SCAN.submit(() -> candidates.parallelStream().forEach(file -> {
+                if (!cancelled.get()) {
+                    String text = unsaved.isEmpty() ? null : unsaved.get(DocumentRegistry.key(file));
+                    if (text == null) {
+                        verify(file, query, sink, cancelled);
+                    } else {
+                        verify(file, text, query, sink, cancelled);
+                    }
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return candidates.size();
+    }
+
+    // Live files holding every trigram; every live file when there are none to narrow by
+    List<Path> candidates(int[] trigrams) {
+        lock.readLock().lock();
+        try {
+            List<Path> result = new ArrayList<>();
+            if (trigrams.length == 0) {
+                for (int id = 0; id < files.size(); id++) {
+                    if (!retired.get(id)) {
+                        result.add(files.get(id));
+                    }
+                }
+                return result;
+            }
+            PostingList[] lists = new PostingList[trigrams.length];
+            for (int i = 0; i < trigrams.length; i++) {
+                lists[i] = postings.get(trigrams[i]);
+                if (lists[i] == null) {
+                    return result;
+                }
+            }
+            // Shortest list first keeps every intersection step as small as possible
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+            int[] matching = lists[0].decode();
+            int size = matching.length;
+            for (int i = 1; i < lists.length && size > 0; i++) {
+                size = lists[i].retain(matching, size);
+            }
+            for (int i = 0; i < size; i++) {
+                if (!retired.get(matching[i])) {
+                    result.add(files.get(matching[i]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addAll(List<Path> batch) throws InterruptedException {
+        List<Callable<int[]>> reads = new ArrayList<>(batch.size());
+        for (Path file : batch) {
+            reads.add(() -> read(file));
+        }
+        List<Future<int[]>> results = FluxExecutors.SCAN.invokeAll(reads);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                int[] trigrams = results.get(i).get();
+                if (trigrams != null) {
+                    add(batch.get(i), trigrams);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Path file, int[] trigrams) {
+        int id = files.size();
+        files.add(file);
+        ids.put(file, id);
+        for (int trigram : trigrams) {
+            postings.computeIfAbsent(trigram, key -> new PostingList()).add(id);
+        }
+    }
+
+    private void retire(Path file) {
+        Integer id = ids.remove(file);
+        if (id != null) {
+            retired.set(id);
+        }
+    }
+
+    // The file's distinct trigrams, or null for binary, oversized or unreadable files
+    private static int[] read(Path file) {
+        try {
+            if (Files.size(file) > MAX_FILE_SIZE) {
+                return null;
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            for (int i = 0, end = Math.min(bytes.length, 8000); i < end; i++) {
+                if (bytes[i] == 0) {
+                    return null; // Binary
+                }
+            }
+            return trigrams(bytes, false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Jumps from match to match over the whole text and only then works out line numbers, so
+    // lines without a match are never split out or scanned twice
+    private static void verify(Path file, SearchQuery query, Consumer<Hit> sink, AtomicBoolean cancelled) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return;
+        }
+        verify(file, text, query, sink, cancelled);
+    }
+
+    private static void verify(Path file, String text, SearchQuery query, Consumer<Hit> sink, AtomicBoolean cancelled) {
+        int line = 1;
+        int counted = 0;
+        for (int from = 0; from <= text.length() && !cancelled.get(); ) {
+            int match = query.findFrom(text, from);
+            if (match < 0) {
+                return;
+            }
+            int lineStart = text.lastIndexOf('\n', match - 1) + 1;
+            int lineEnd = text.indexOf('\n', match);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            int contentEnd = lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            for (; counted < lineStart; counted++) {
+                if (text.charAt(counted) == '\n') {
+                    line++;
+                }
+            }
+            int column = query.findInLine(text, lineStart, contentEnd);
+            if (column >= 0) {
+                sink.accept(new Hit(file, line, column, text.substring(lineStart, contentEnd)));
+            }
+            from = lineEnd + 1;
+        }
+    }
+
+    // Distinct trigrams of the bytes. With asciiOnly, trigrams containing non-ASCII bytes are skipped.
+    static int[] trigrams(byte[] bytes, boolean asciiOnly) {
+        return EXTRACTOR.get().extract(bytes, asciiOnly);
+    }
+
+    // Trigram of three bytes with ASCII letters folded to lower case
+    static int trigram(byte a, byte b, byte c) {
+        return lower(a) << 16 | lower(b) << 8 | lower(c);
+    }
+
+    private static int lower(byte b) {
+        int value = b & 0xFF;
+        return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+    }
+
+    // Collects distinct trigrams with a bitmap over all 2^24 of them, so a file is one pass with no sorting
+    private static final class Extractor {
+        private final long[] seen = new long[1 << 18];
+        private int[] found = new int[4096];
+
+        int[] extract(byte[] bytes, boolean asciiOnly) {
+            int count = 0;
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                byte a = bytes[i];
+                byte b = bytes[i + 1];
+                byte c = bytes[i + 2];
+                if (a == '\n' || b == '\n' || c == '\n' || asciiOnly && (a | b | c) < 0) {
+                    continue;
+                }
+                int trigram = trigram(a, b, c);
+                long bit = 1L << trigram;
+                if ((seen[trigram >>> 6] & bit) == 0) {
+                    seen[trigram >>> 6] |= bit;
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = trigram;
+                }
+            }
+            int[] result = Arrays.copyOf(found, count);
+            for (int trigram : result) {
+                seen[trigram >>> 6] = 0;
+            }
+            return result;
+        }
+    }
+
+    // Ascending file ids stored as varint-encoded gaps
+    private static final class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        void add(int id) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int gap = id - last;
+            while (gap >= 0x80) {
+                data[length++] = (byte) (gap | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte) gap;
+            last = id;
+            count++;
+        }
+
+        int[] decode() {
+            int[] ids = new int[count];
+            int id = -1;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                id += gap;
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        // Keeps the ids in matching[0, size) that are also in this list; returns the new size
+        int retain(int[] matching, int size) {
+            int kept = 0;
+            int id = -1;
+            int position = 0;
+            int decoded = 0;
+            for (int i = 0; i < size; i++) {
+                while (id < matching[i] && decoded < count) {
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = data[position++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    id += gap;
+                    decoded++;
+                }
+                if (id == matching[i]) {
+                    matching[kept++] = id;
+                } else if (id < matching[i]) {
+                    break; // This list is exhausted
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.bitwave.projectflux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// Runs compiled programs in a JVM that is started ahead of time and kept for the next run, so a
+// run skips JVM startup and finds the JDK's classes already loaded and compiled. Each program gets
+// a class loader of its own (see RunWorker). A worker that a program ended with System.exit, that
+// was killed, or that still has threads left over is thrown away and a new one started in the
+// background. runFresh starts a JVM of its own instead, for programs that need a clean one.
+final class WarmRunner {
+    private Worker spare; // guarded by this
+
+    // Starts a worker in the background if there is none waiting, so the next run finds it warm
+    synchronized void prestart() {
+        if (spare == null) {
+            spare = new Worker();
+            FluxExecutors.IO.execute(spare::start);
+        }
+    }
+
+    // Runs mainClass from classes (binary name -> class file) and the jars in libraries in a warm
+    // worker. Output is written to stdout and stderr as it comes. Throws IOException if no worker
+    // could be started.
+    Execution run(Map<String, byte[]> classes, List<Path> libraries, String mainClass, List<String> args,
+                  OutputStream stdout, OutputStream stderr) throws IOException {
+        Worker worker;
+        synchronized (this) {
+            worker = spare;
+            spare = null;
+        }
+        if (worker == null || worker.hasExited()) {
+            worker = new Worker();
+        }
+        worker.start();
+        Worker running = worker;
+        Run run = worker.run(classes, libraries, mainClass, args, stdout, stderr);
+        run.exit.whenComplete((exitCode, e) -> {
+            if (running.reusable) {
+                synchronized (this) {
+                    if (spare == null) {
+                        spare = running;
+                        return;
+                    }
+                }
+            }
+            running.close();
+            prestart();
+        });
+        return run;
+    }
+
+    // The classes go into a temporary directory that is deleted once the program ends.
+    // Throws IOException if the classes cannot be written or java cannot be started.
+    static Execution runFresh(Map<String, byte[]> classes, List<Path> libraries, String mainClass, List<String> args,
+                              ProcessRunner.Output output) throws IOException {
+        Path directory = Files.createTempDirectory("projectflux-run");
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            Path file = directory.resolve(entry.getKey().replace('.', '/') + ".class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+        StringBuilder classPath = new StringBuilder(directory.toString());
+        for (Path library : libraries) {
+            classPath.append(File.pathSeparatorChar).append(library);
+        }
+        List<String> command = new ArrayList<>(List.of(javaCommand(), "-cp", classPath.toString(), mainClass));
+        command.addAll(args);
+        ProcessRunner runner = ProcessRunner.start(command, null, output);
+        runner.onExit().whenComplete((exitCode, e) -> delete(directory));
+        return runner;
+    }
+
+    private static String javaCommand() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Run implements Execution {
+        final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        final OutputStream stdout;
+        final OutputStream stderr;
+        private final Worker worker;
+        private volatile boolean killed;
+
+        Run(Worker worker, OutputStream stdout, OutputStream stderr) {
+            this.worker = worker;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        @Override
+        public CompletableFuture<Integer> onExit() {
+            return exit;
+        }
+
+        @Override
+        public boolean wasKilled() {
+            return killed;
+        }
+
+        // A running program cannot be stopped safely inside the JVM, so the whole worker goes
+        @Override
+        public void kill() {
+            killed = true;
+            worker.reusable = false;
+            worker.process.destroyForcibly();
+        }
+    }
+
+    private static final class Worker {
+        private Process process;
+        private DataOutputStream commands;
+        private volatile Run current;
+        private volatile boolean reusable;
+        private IOException startFailure;
+
+        // Safe to call more than once and from several threads; only the first starts the JVM
+        synchronized void start() {
+            if (process != null || startFailure != null) {
+                return;
+            }
+            try {
+                Path classPath = Path.of(RunWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                process = new ProcessBuilder(javaCommand(), "-cp", classPath.toString(), RunWorker.class.getName()).start();
+            } catch (IOException e) {
+                startFailure = e;
+                return;
+            } catch (URISyntaxException | RuntimeException e) {
+                startFailure = new IOException("Cannot locate the run worker: " + e.getMessage(), e);
+                return;
+            }
+            commands = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            FluxExecutors.IO.execute(this::readFrames);
+            FluxExecutors.IO.execute(this::pumpErrors);
+        }
+
+        synchronized Run run(Map<String, byte[]> classes, List<Path> libraries, String mainClass, List<String> args,
+                             OutputStream stdout, OutputStream stderr) throws IOException {
+            if (startFailure != null) {
+                throw startFailure;
+            }
+            Run run = new Run(this, stdout, stderr);
+            current = run;
+            reusable = false;
+            try {
+                commands.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    commands.writeUTF(entry.getKey());
+                    commands.writeInt(entry.getValue().length);
+                    commands.write(entry.getValue());
+                }
+                commands.writeInt(libraries.size());
+                for (Path library : libraries) {
+                    commands.writeUTF(library.toString());
+                }
+                commands.writeUTF(mainClass);
+                commands.writeInt(args.size());
+                for (String arg : args) {
+                    commands.writeUTF(arg);
+                }
+                commands.flush();
+            } catch (IOException e) {
+                process.destroyForcibly(); // Died while waiting, so the exit frame never comes
+                throw e;
+            }
+            return run;
+        }
+
+        synchronized boolean hasExited() {
+            return process != null && !process.isAlive();
+        }
+
+        synchronized void close() {
+            if (process != null) {
+                try {
+                    commands.close(); // The worker ends at the end of its input
+                } catch (IOException e) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        // Hands the frames of the program's output to the current run until the worker exits
+        private void readFrames() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+                byte[] buffer = new byte[8192];
+                while (true) {
+                    int kind = in.readUnsignedByte();
+                    Run run = current;
+                    if (kind == RunWorker.EXIT) {
+                        int exitCode = in.readInt();
+                        reusable = in.readBoolean() && !run.killed;
+                        current = null;
+                        finish(run, exitCode);
+                        continue;
+                    }
+                    int length = in.readInt();
+                    if (buffer.length < length) {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+                    if (run != null) {
+                        (kind == RunWorker.STDERR ? run.stderr : run.stdout).write(buffer, 0, length);
+                    }
+                }
+            } catch (EOFException e) {
+                // The worker exited: closed by us, killed, or the program called System.exit
+            } catch (IOException e) {
+                process.destroyForcibly();
+            }
+            reusable = false;
+            Run run = current;
+            if (run != null) {
+                current = null;
+                process.onExit().thenAccept(exited -> finish(run, exited.exitValue()));
+            }
+        }
+
+        // What the worker JVM itself reports, such as a crash, goes to the program's stderr
+        private void pumpErrors() {
+            try (InputStream errors = process.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = errors.read(buffer)) >= 0) {
+                    Run run = current;
+                    if (run != null) {
+                        run.stderr.write(buffer, 0, read);
+                    }
+                }
+            } catch (IOException e) {
+                // The pipe closes under us when the worker is killed
+            }
+        }
+
+        private static void finish(Run run, int exitCode) {
+            try {
+                run.stdout.close();
+                run.stderr.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            run.exit.complete(exitCode);
+        }
+    }
+}
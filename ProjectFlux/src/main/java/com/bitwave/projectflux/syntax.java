@@ -1,87 +1,118 @@
 package com.bitwave.projectflux;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
-
-import org.fxmisc.richtext.model.StyleSpan;
 import org.fxmisc.richtext.model.StyleSpans;
-import java.util.Collection;
-import java.util.ArrayList;
-import java.util.List;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
 
-public class syntax {
+// Reusable tokenizer. Tokens are written into primitive arrays (start, length, style id)
+// that are kept between calls, so a highlight pass produces next to no garbage.
+// An instance is not thread-safe; use one per thread.
+public class syntax implements JavaLexer.TokenSink {
     private static final String[] KEYWORDS = {
             "public", "private", "static", "final", "class", "void", "if", "else", "while", "for", "return", "import"
     };
 
-    private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
-    private static final String COMMENT_PATTERN = "//[^\n]*";
-    private static final String STRING_PATTERN = "\"([^\"\\\\]|\\\\.)*\"";
-
-    private static final Pattern PATTERN = Pattern.compile(
-            "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
-            + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
-            + "|(?<STRING>" + STRING_PATTERN + ")"
-    );
-
-    public static List<StyleSpan<String>> computeHighlighting(String text) {
-        Matcher matcher = PATTERN.matcher(text);
-        List<StyleSpan<String>> spans = new ArrayList<>();
-
-        int lastEnd = 0;
-        while (matcher.find()) {
-            String styleClass = null;
-            if (matcher.group("KEYWORD") != null) {
-                styleClass = "keyword";
-            } else if (matcher.group("COMMENT") != null) {
-                styleClass = "comment";
-            } else if (matcher.group("STRING") != null) {
-                styleClass = "string";
-            }
-
-            if (styleClass != null) {
-                spans.add(new StyleSpan<>("", matcher.start() - lastEnd));
-                spans.add(new StyleSpan<>(styleClass, matcher.end() - lastEnd));
-                lastEnd = matcher.end();
-            }
-        }
-
-        spans.add(new StyleSpan<>("", text.length() - lastEnd));
-        return spans;
-    }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
+    // The style classes of each style id, shared by every span. Ids line up with the JavaLexer
+    // token constants, 0 is unstyled.
+    private static final Collection<String>[] STYLE_CLASSES = styleCollections(JavaLexer.STYLE_CLASSES);
 
+    private static final ThreadLocal<syntax> SHARED = ThreadLocal.withInitial(syntax::new);
 
+    private final JavaLexer lexer;
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] styles = new int[256];
+    private int count;
+    private int base;
+    private int textLength;
 
+    public syntax() {
+        this(new JavaLexer(KEYWORDS));
+    }
 
+    syntax(JavaLexer lexer) {
+        this.lexer = lexer;
+    }
 
+    public static StyleSpans<Collection<String>> computeHighlighting(String text) {
+        syntax tokenizer = SHARED.get();
+        tokenizer.tokenize(text);
+        return tokenizer.toStyleSpans();
+    }
 
+    // Tokenizes the whole text, replacing the previous tokens. Returns the token count.
+    public int tokenize(CharSequence text) {
+        tokenize(text, 0, text.length(), JavaLexer.STATE_DEFAULT);
+        return count;
+    }
 
+    // Tokenizes text[from, to) starting in the given lexer state and returns the end state
+    public int tokenize(CharSequence text, int from, int to, int state) {
+        count = 0;
+        base = from;
+        textLength = to - from;
+        return lexer.lex(text, from, to, state, this);
+    }
 
+    // Gives up with a CancellationException once the thread is interrupted, which is how
+    // AsyncHighlighter cancels a pass
+    @Override
+    public void token(int start, int length, int style) {
+        if ((count & 4095) == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+        if (count == starts.length) {
+            int capacity = count * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+        }
+        starts[count] = start - base;
+        lengths[count] = length;
+        styles[count] = style;
+        count++;
+    }
 
+    public int size() {
+        return count;
+    }
 
+    public int start(int index) {
+        return starts[index];
+    }
 
+    public int length(int index) {
+        return lengths[index];
+    }
 
+    public int style(int index) {
+        return styles[index];
+    }
 
+    // Adapter for RichTextFX: replays the token arrays into one StyleSpans run
+    public StyleSpans<Collection<String>> toStyleSpans() {
+        SpanCollector collector = new SpanCollector();
+        for (int i = 0; i < count; i++) {
+            collector.token(starts[i], lengths[i], styles[i]);
+        }
+        collector.fillTo(textLength);
+        return collector.create();
+    }
 
+    static Collection<String> styleClasses(int id) {
+        return STYLE_CLASSES[id];
+    }
 
+    @SuppressWarnings("unchecked")
+    private static Collection<String>[] styleCollections(String[] names) {
+        Collection<String>[] collections = new Collection[names.length];
+        collections[0] = Collections.emptyList();
+        for (int id = 1; id < names.length; id++) {
+            collections[id] = Collections.singleton(names[id]);
+        }
+        return collections;
+    }
 }
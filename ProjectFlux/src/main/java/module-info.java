@@ -12,6 +12,9 @@ module com.bitwave.projectflux {
     requires com.almasb.fxgl.all;
     requires org.fxmisc.richtext;
     requires java.desktop;
+    requires java.compiler;
+    requires java.xml;
+    requires jdk.unsupported;
     requires wellbehavedfx;
 
     opens com.bitwave.projectflux to javafx.fxml;
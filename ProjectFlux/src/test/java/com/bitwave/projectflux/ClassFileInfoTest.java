@@ -0,0 +1,76 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassFileInfoTest {
+    @TempDir
+    Path directory;
+
+    private final InMemoryCompiler compiler = new InMemoryCompiler();
+
+    private ClassFileInfo compile(String className, String source) throws IOException {
+        Path file = directory.resolve(className + ".java");
+        InMemoryCompiler.Result result = compiler.compile(List.of(file), Map.of(file, source), null);
+        assertTrue(result.success, result.diagnostics.toString());
+        return ClassFileInfo.parse(result.classes.get(className));
+    }
+
+    @Test
+    void methodBodiesAreNotPartOfTheAbi() throws IOException {
+        ClassFileInfo before = compile("A", "class A { int f() { return 1; } }");
+        ClassFileInfo after = compile("A", "class A { int f() { return 2 + 3; } }");
+        assertEquals(before.abiHash, after.abiHash);
+    }
+
+    @Test
+    void privateMembersAreNotPartOfTheAbi() throws IOException {
+        ClassFileInfo before = compile("A", "class A { void f() { } }");
+        ClassFileInfo after = compile("A", "class A { void f() { g(); } private int g() { return 0; } }");
+        assertEquals(before.abiHash, after.abiHash);
+    }
+
+    @Test
+    void signaturesArePartOfTheAbi() throws IOException {
+        ClassFileInfo before = compile("A", "class A { void f() { } }");
+        assertNotEquals(before.abiHash, compile("A", "class A { int f() { return 0; } }").abiHash);
+        assertNotEquals(before.abiHash, compile("A", "class A { void f() throws Exception { } }").abiHash);
+        assertNotEquals(before.abiHash, compile("A", "class A { public void f() { } }").abiHash);
+    }
+
+    @Test
+    void memberOrderDoesNotChangeTheAbi() throws IOException {
+        ClassFileInfo before = compile("A", "class A { void f() { } void g() { } int x; }");
+        ClassFileInfo after = compile("A", "class A { int x; void g() { } void f() { } }");
+        assertEquals(before.abiHash, after.abiHash);
+    }
+
+    @Test
+    void constantValuesAreHashedApart() throws IOException {
+        ClassFileInfo before = compile("A", "class A { static final int LIMIT = 1; }");
+        ClassFileInfo after = compile("A", "class A { static final int LIMIT = 2; }");
+        assertEquals(before.abiHash, after.abiHash);
+        assertNotEquals(before.constantsHash, after.constantsHash);
+    }
+
+    @Test
+    void recordsReferencesAndSupertypes() throws IOException {
+        ClassFileInfo info = compile("A", "class A extends java.util.AbstractList<String> implements Runnable {"
+                + " Thread worker; public void run() { new java.util.ArrayDeque<String>(); }"
+                + " public String get(int i) { return null; } public int size() { return 0; } }");
+        assertEquals("A", info.name);
+        assertEquals(List.of("java.util.AbstractList", "java.lang.Runnable"), info.supertypes);
+        assertTrue(info.references.contains("java.util.ArrayDeque"));
+        assertTrue(info.references.contains("java.lang.Thread"));
+        assertTrue(!info.references.contains("A"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsoleBufferTest {
+    private static List<String> texts(List<ConsoleBuffer.Line> lines) {
+        List<String> texts = new ArrayList<>();
+        for (ConsoleBuffer.Line line : lines) {
+            texts.add(line.text);
+        }
+        return texts;
+    }
+
+    @Test
+    void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(8, new ConsoleBuffer(5).capacity());
+        assertEquals(8, new ConsoleBuffer(8).capacity());
+        assertEquals(16, new ConsoleBuffer(9).capacity());
+    }
+
+    @Test
+    void drainsInOrderOnce() {
+        ConsoleBuffer buffer = new ConsoleBuffer(8);
+        assertFalse(buffer.hasUnread());
+        buffer.add("out", false);
+        buffer.add("err", true);
+        assertTrue(buffer.hasUnread());
+        List<ConsoleBuffer.Line> lines = buffer.drain();
+        assertEquals(List.of("out", "err"), texts(lines));
+        assertFalse(lines.get(0).stderr);
+        assertTrue(lines.get(1).stderr);
+        assertFalse(buffer.hasUnread());
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    // Writers a ring or more ahead of the reader overwrite the oldest lines, which count as dropped
+    @Test
+    void dropsTheOldestLinesWhenItWrapsAround() {
+        ConsoleBuffer buffer = new ConsoleBuffer(8);
+        for (int i = 0; i < 5; i++) {
+            buffer.add("line " + i, false);
+        }
+        assertEquals(5, buffer.drain().size());
+        for (int i = 5; i < 25; i++) {
+            buffer.add("line " + i, false);
+        }
+        List<ConsoleBuffer.Line> lines = buffer.drain();
+        assertEquals(8, lines.size());
+        assertEquals("line 17", lines.get(0).text);
+        assertEquals("line 24", lines.get(7).text);
+        assertEquals(24, lines.get(7).sequence);
+        assertEquals(12, buffer.dropped());
+
+        // Still in step after the wrap
+        buffer.add("line 25", false);
+        assertEquals(List.of("line 25"), texts(buffer.drain()));
+        assertEquals(12, buffer.dropped());
+    }
+
+    @Test
+    void skipsEverythingWrittenSoFar() {
+        ConsoleBuffer buffer = new ConsoleBuffer(8);
+        for (int i = 0; i < 20; i++) {
+            buffer.add("old " + i, false);
+        }
+        buffer.skipAll();
+        assertFalse(buffer.hasUnread());
+        buffer.add("new", false);
+        assertEquals(List.of("new"), texts(buffer.drain()));
+        assertEquals(0, buffer.dropped());
+    }
+
+    // With room for everything, no line from any writer is lost and each writer's lines keep their order
+    @Test
+    void keepsEveryLineFromConcurrentWriters() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 10_000;
+        ConsoleBuffer buffer = new ConsoleBuffer(writers * perWriter);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String prefix = w + ":";
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    buffer.add(prefix + i, false);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        List<ConsoleBuffer.Line> lines = new ArrayList<>();
+        while (threads.stream().anyMatch(Thread::isAlive) || buffer.hasUnread()) {
+            lines.addAll(buffer.drain());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        lines.addAll(buffer.drain());
+
+        assertEquals(writers * perWriter, lines.size());
+        assertEquals(0, buffer.dropped());
+        int[] nextOf = new int[writers];
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(i, lines.get(i).sequence);
+            String[] parts = lines.get(i).text.split(":");
+            int writer = Integer.parseInt(parts[0]);
+            assertEquals(nextOf[writer]++, Integer.parseInt(parts[1]));
+        }
+    }
+}
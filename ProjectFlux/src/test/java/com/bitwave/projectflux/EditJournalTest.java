@@ -0,0 +1,190 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditJournalTest {
+    @TempDir
+    Path directory;
+    @TempDir
+    Path journals;
+
+    private final List<EditJournal> opened = new ArrayList<>();
+
+    // The writer thread must be done with the journals before they are deleted
+    @AfterEach
+    void closeJournals() throws InterruptedException {
+        for (EditJournal journal : opened) {
+            journal.close();
+        }
+        EditJournal.awaitWrites();
+    }
+
+    private EditJournal open(String name, String text) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, text);
+        EditJournal journal = EditJournal.open(journals, file, text);
+        opened.add(journal);
+        return journal;
+    }
+
+    private Path journalOf(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        return journals.resolve(FileNames.of(key) + "-" + Integer.toHexString(key.toString().hashCode()) + ".journal");
+    }
+
+    // Records an edit to text as the editor does, compacting when the journal asks for it
+    private static void edit(EditJournal journal, StringBuilder text, int position, int removed, String inserted) {
+        text.replace(position, position + removed, inserted);
+        if (journal.record(position, removed, inserted)) {
+            journal.compact(text.toString());
+        }
+    }
+
+    // What recover finds for this test's files, as a crash would leave it
+    private EditJournal.Recovered recover(String name) throws InterruptedException {
+        EditJournal.awaitWrites();
+        Path file = directory.resolve(name).toAbsolutePath().normalize();
+        for (EditJournal.Recovered recovered : EditJournal.recover(journals)) {
+            if (recovered.file.equals(file)) {
+                return recovered;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void replaysEdits() throws IOException, InterruptedException {
+        EditJournal journal = open("hello.txt", "hello world");
+        StringBuilder text = new StringBuilder("hello world");
+        edit(journal, text, 5, 0, ",");
+        edit(journal, text, 12, 0, "!");
+        edit(journal, text, 0, 1, "J");
+        assertEquals(3, journal.version());
+
+        EditJournal.Recovered recovered = recover("hello.txt");
+        assertEquals("Jello, world!", recovered.text);
+        assertEquals("hello world", recovered.diskText);
+    }
+
+    @Test
+    void leavesNoJournalOnceSaved() throws IOException, InterruptedException {
+        EditJournal journal = open("saved.txt", "one");
+        edit(journal, new StringBuilder("one"), 3, 0, " two");
+        EditJournal.awaitWrites();
+        assertTrue(Files.exists(journalOf(directory.resolve("saved.txt"))));
+
+        Files.writeString(directory.resolve("saved.txt"), "one two");
+        journal.saved(journal.version(), "one two");
+        assertNull(recover("saved.txt"));
+        assertFalse(Files.exists(journalOf(directory.resolve("saved.txt"))));
+
+        // The next edit starts a new journal from the saved text
+        edit(journal, new StringBuilder("one two"), 7, 0, " three");
+        assertEquals("one two three", recover("saved.txt").text);
+    }
+
+    // An edit made while the save was being written keeps the journal, which does not depend on the file
+    @Test
+    void keepsEditsMadeDuringASave() throws IOException, InterruptedException {
+        EditJournal journal = open("racing.txt", "abc");
+        StringBuilder text = new StringBuilder("abc");
+        edit(journal, text, 3, 0, "d");
+        long version = journal.version();
+        edit(journal, text, 4, 0, "e");
+        Files.writeString(directory.resolve("racing.txt"), "abcd");
+        journal.saved(version, "abcd");
+
+        EditJournal.Recovered recovered = recover("racing.txt");
+        assertEquals("abcde", recovered.text);
+        assertEquals("abcd", recovered.diskText);
+    }
+
+    // A checkout after a crash must not cost the edits
+    @Test
+    void keepsEditsWhenTheFileChangedOnDisk() throws IOException, InterruptedException {
+        EditJournal journal = open("changed.txt", "original");
+        edit(journal, new StringBuilder("original"), 0, 0, "edited ");
+        EditJournal.awaitWrites();
+        Files.writeString(directory.resolve("changed.txt"), "changed elsewhere");
+
+        EditJournal.Recovered recovered = recover("changed.txt");
+        assertEquals("edited original", recovered.text);
+        assertEquals("changed elsewhere", recovered.diskText);
+    }
+
+    // Without the compaction it asks for, the journal is based on the file on disk. If that changes,
+    // the edits cannot be replayed, but the journal is not deleted either.
+    @Test
+    void keepsAJournalItCannotReplay() throws IOException, InterruptedException {
+        EditJournal journal = open("uncompacted.txt", "original");
+        assertTrue(journal.record(0, 0, "edited "));
+        assertEquals("edited original", recover("uncompacted.txt").text);
+
+        Files.writeString(directory.resolve("uncompacted.txt"), "changed elsewhere");
+        assertNull(recover("uncompacted.txt"));
+        assertTrue(Files.exists(journalOf(directory.resolve("uncompacted.txt"))));
+    }
+
+    // Compacted once the edits outgrow the text, and still recovered with the file gone
+    @Test
+    void compactsOnceTheEditsOutgrowTheText() throws IOException, InterruptedException {
+        EditJournal journal = open("compacted.txt", "base");
+        StringBuilder text = new StringBuilder("base");
+        assertTrue(journal.record(4, 0, "!")); // The first edit since the text was on disk
+        text.append('!');
+        journal.compact(text.toString());
+        assertFalse(journal.record(5, 0, "?"));
+        text.append('?');
+        assertTrue(journal.record(6, 0, "x".repeat(300 * 1024)));
+        text.append("x".repeat(300 * 1024));
+        journal.compact(text.toString());
+        edit(journal, text, 0, 4, "new");
+        Files.delete(directory.resolve("compacted.txt"));
+
+        EditJournal.Recovered recovered = recover("compacted.txt");
+        assertEquals("new!?" + "x".repeat(300 * 1024), recovered.text);
+        assertNull(recovered.diskText);
+    }
+
+    // Replay stops at the record a crash cut short and keeps the ones before it
+    @Test
+    void stopsAtATornRecord() throws IOException, InterruptedException {
+        EditJournal journal = open("torn.txt", "text");
+        StringBuilder text = new StringBuilder("text");
+        edit(journal, text, 4, 0, " one");
+        edit(journal, text, 8, 0, " two");
+        edit(journal, text, 12, 0, " three");
+        EditJournal.awaitWrites();
+        Path log = journalOf(directory.resolve("torn.txt"));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+        assertEquals("text one two", recover("torn.txt").text);
+    }
+
+    @Test
+    void deletesTheJournalOnClose() throws IOException, InterruptedException {
+        EditJournal journal = open("closed.txt", "text");
+        edit(journal, new StringBuilder("text"), 0, 0, "more ");
+        EditJournal.awaitWrites();
+        journal.close();
+        journal.record(0, 0, "ignored ");
+        assertNull(recover("closed.txt"));
+        assertFalse(Files.exists(journalOf(directory.resolve("closed.txt"))));
+    }
+}
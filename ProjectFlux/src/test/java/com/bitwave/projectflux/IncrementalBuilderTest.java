@@ -0,0 +1,152 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalBuilderTest {
+    @TempDir
+    Path root;
+    @TempDir
+    Path caches;
+    @TempDir
+    Path jars;
+
+    private IncrementalBuilder builder;
+
+    private void write(String className, String source) throws IOException {
+        Files.writeString(root.resolve(className + ".java"), source);
+    }
+
+    // A jar of the class compiled from source, as a Maven dependency would be
+    private Path jar(String className, String source) throws IOException {
+        Path file = jars.resolve(className + ".java");
+        byte[] bytes = new InMemoryCompiler().compile(List.of(file), Map.of(file, source), null).classes.get(className);
+        Path jar = jars.resolve(className.toLowerCase() + ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(className + ".class"));
+            out.write(bytes);
+        }
+        return jar;
+    }
+
+    private IncrementalBuilder.Result build() throws IOException {
+        if (builder == null) {
+            builder = IncrementalBuilder.open(root, new InMemoryCompiler(), caches);
+        }
+        IncrementalBuilder.Result result = builder.build(Map.of());
+        assertTrue(result.success, result.diagnostics.toString());
+        return result;
+    }
+
+    @Test
+    void firstBuildCompilesEverythingAndNextBuildNothing() throws IOException {
+        write("A", "class A { }");
+        write("B", "class B { A a; }");
+        assertEquals(2, build().compiled);
+        assertEquals(0, build().compiled);
+    }
+
+    @Test
+    void bodyChangeOnlyRecompilesItsSource() throws IOException {
+        write("A", "class A { int f() { return 1; } }");
+        write("B", "class B { int g(A a) { return a.f(); } }");
+        build();
+        write("A", "class A { int f() { return 2; } }");
+        IncrementalBuilder.Result result = build();
+        assertEquals(1, result.compiled);
+        assertFalse(result.abiChanged.contains("A"));
+    }
+
+    @Test
+    void abiChangeRecompilesDependents() throws IOException {
+        write("A", "class A { int f() { return 1; } }");
+        write("B", "class B { long g(A a) { return a.f(); } }");
+        write("C", "class C { }");
+        build();
+        write("A", "class A { long f() { return 1; } }");
+        IncrementalBuilder.Result result = build();
+        assertEquals(2, result.compiled);
+        assertTrue(result.abiChanged.contains("A"));
+    }
+
+    // C names only B in its class file, although foo is declared in A
+    @Test
+    void supertypeChangeReachesCallersOfSubclasses() throws IOException {
+        write("A", "class A { void foo() { } }");
+        write("B", "class B extends A { }");
+        write("C", "class C { void m(B b) { b.foo(); } }");
+        build();
+        write("A", "class A { int foo() { return 0; } }");
+        IncrementalBuilder.Result result = build();
+        assertEquals(3, result.compiled);
+        assertTrue(result.abiChanged.contains("B"));
+    }
+
+    @Test
+    void removedSupertypeMemberBreaksCallersOfSubclasses() throws IOException {
+        write("A", "class A { void foo() { } }");
+        write("B", "class B extends A { }");
+        write("C", "class C { void m(B b) { b.foo(); } }");
+        build();
+        write("A", "class A { }");
+        IncrementalBuilder.Result result = builder.build(Map.of());
+        assertFalse(result.success);
+    }
+
+    @Test
+    void upstreamSupertypeChangeReachesCallersOfLocalSubclasses() throws IOException {
+        write("B", "class B extends A { }");
+        write("C", "class C { void m(B b) { b.foo(); } }");
+        InMemoryCompiler upstreamCompiler = new InMemoryCompiler();
+        Path upstreamSource = root.resolveSibling(root.getFileName() + "-upstream.java");
+        Map<String, byte[]> upstream = upstreamCompiler.compile(List.of(upstreamSource),
+                Map.of(upstreamSource, "class A { void foo() { } }"), null).classes;
+        builder = IncrementalBuilder.open(root, new InMemoryCompiler(), caches);
+        assertTrue(builder.build(Map.of(), upstream, Set.of(), false).success);
+
+        upstream = upstreamCompiler.compile(List.of(upstreamSource),
+                Map.of(upstreamSource, "class A { int foo() { return 0; } }"), null).classes;
+        IncrementalBuilder.Result result = builder.build(Map.of(), upstream, Set.of("A"), false);
+        assertTrue(result.success);
+        assertEquals(2, result.compiled);
+        assertTrue(result.abiChanged.contains("B"));
+    }
+
+    @Test
+    void compilesAgainstLibrariesAndAgainWhenTheyChange() throws IOException {
+        write("A", "class A { int f(Lib lib) { return lib.f(); } }");
+        write("B", "class B { }");
+        Path lib = jar("Lib", "public class Lib { public int f() { return 1; } }");
+        builder = IncrementalBuilder.open(root, new InMemoryCompiler(), caches);
+        builder.setLibraries(List.of(lib));
+        assertEquals(2, build().compiled);
+        builder.setLibraries(List.of(lib));
+        assertEquals(0, build().compiled);
+
+        jar("Lib", "public class Lib { public long f() { return 1; } }");
+        Files.setLastModifiedTime(lib, FileTime.fromMillis(Files.getLastModifiedTime(lib).toMillis() + 2000));
+        builder.setLibraries(List.of(lib));
+        assertFalse(builder.build(Map.of()).success); // f now returns a long
+
+        // The libraries a build used are cached along with its classes
+        write("A", "class A { long f(Lib lib) { return lib.f(); } }");
+        build();
+        builder = IncrementalBuilder.open(root, new InMemoryCompiler(), caches);
+        builder.setLibraries(List.of(lib));
+        assertEquals(0, build().compiled);
+    }
+}
@@ -0,0 +1,72 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModuleGraphTest {
+    @TempDir
+    Path root;
+    @TempDir
+    Path repository;
+
+    private void module(String name, String dependencies) throws IOException {
+        Files.createDirectories(root.resolve(name + "/src/main/java"));
+        Files.writeString(root.resolve(name + "/pom.xml"), "<project><groupId>org.example</groupId>"
+                + "<artifactId>" + name + "</artifactId><version>1.0</version>"
+                + "<properties><guava.version>33.0</guava.version></properties>"
+                + "<dependencies>" + dependencies + "</dependencies></project>");
+    }
+
+    private static String dependency(String groupId, String artifactId, String version, String scope) {
+        return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId>"
+                + (version != null ? "<version>" + version + "</version>" : "")
+                + (scope != null ? "<scope>" + scope + "</scope>" : "") + "</dependency>";
+    }
+
+    private Path installed(String groupId, String artifactId, String version) throws IOException {
+        Path jar = repository.resolve(groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/"
+                + artifactId + "-" + version + ".jar");
+        Files.createDirectories(jar.getParent());
+        Files.write(jar, new byte[0]);
+        return jar;
+    }
+
+    private static ModuleGraph.Module find(ModuleGraph graph, String name) {
+        for (ModuleGraph.Module module : graph.modules()) {
+            if (module.name.equals(name)) {
+                return module;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void ordersModulesByTheirDependencies() throws IOException {
+        module("app", dependency("${project.groupId}", "core", "${project.version}", null));
+        module("core", "");
+        ModuleGraph graph = ModuleGraph.discover(new ParallelProjectScanner().scan(root), repository);
+        assertEquals("[core, app]", graph.modules().toString());
+        assertEquals(List.of(find(graph, "core")), find(graph, "app").dependencies);
+        assertEquals(List.of(), find(graph, "app").libraries);
+    }
+
+    // Test dependencies are left out, and a version the pom does not give cannot be looked up
+    @Test
+    void findsOtherDependenciesInTheMavenRepository() throws IOException {
+        module("app", dependency("com.google.guava", "guava", "${guava.version}", null)
+                + dependency("org.junit.jupiter", "junit-jupiter", "5.10.2", "test")
+                + dependency("org.slf4j", "slf4j-api", "2.0.9", "provided")
+                + dependency("org.managed", "elsewhere", null, null));
+        Path guava = installed("com.google.guava", "guava", "33.0");
+        ModuleGraph.Module app = ModuleGraph.discover(new ParallelProjectScanner().scan(root), repository).modules().get(0);
+        assertEquals(List.of(guava), app.libraries);
+        assertEquals(List.of("org.slf4j:slf4j-api:2.0.9", "org.managed:elsewhere:?"), app.missingLibraries);
+    }
+}
@@ -0,0 +1,95 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelProjectScannerTest {
+    @TempDir
+    Path root;
+
+    private static int find(ProjectSnapshot snapshot, String relativePath) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.relativePath(i).equals(relativePath)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Moves a directory's modification time as adding or removing an entry would, without
+    // depending on the file system's timestamp granularity
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+    }
+
+    @Test
+    void listsEveryEntryWithDirectoriesFirst() throws IOException {
+        Files.createDirectories(root.resolve("src/main"));
+        Files.writeString(root.resolve("src/main/App.java"), "class App {}");
+        Files.writeString(root.resolve("README.md"), "readme");
+        Files.createDirectories(root.resolve("target/classes"));
+        Files.writeString(root.resolve("target/classes/App.class"), "ignored");
+
+        ProjectSnapshot snapshot = new ParallelProjectScanner().scan(root);
+        assertEquals(root.toAbsolutePath().normalize(), snapshot.root());
+        assertEquals(2, snapshot.fileCount());
+        assertEquals("src", snapshot.name(snapshot.firstChild(0)));
+        assertEquals("README.md", snapshot.name(snapshot.firstChild(0) + 1));
+        assertEquals(12, snapshot.fileSize(find(snapshot, "src/main/App.java")));
+        assertEquals(-1, find(snapshot, "target"));
+    }
+
+    // A folder whose modification time is unchanged keeps its previous entries; only folders that
+    // changed are listed again
+    @Test
+    void rescansOnlyChangedFolders() throws IOException {
+        Files.createDirectories(root.resolve("a"));
+        Files.createDirectories(root.resolve("b"));
+        Files.writeString(root.resolve("a/kept.txt"), "one");
+        Files.writeString(root.resolve("b/listed.txt"), "one");
+        ParallelProjectScanner scanner = new ParallelProjectScanner();
+        ProjectSnapshot first = scanner.scan(root);
+
+        FileTime aTime = Files.getLastModifiedTime(root.resolve("a"));
+        Files.writeString(root.resolve("a/kept.txt"), "rewritten in place");
+        Files.setLastModifiedTime(root.resolve("a"), aTime);
+        Files.writeString(root.resolve("b/listed.txt"), "rewritten too");
+        Files.writeString(root.resolve("b/added.txt"), "new");
+        touch(root.resolve("b"));
+
+        ProjectSnapshot second = scanner.scan(root, first);
+        assertEquals(3, second.fileCount());
+        assertEquals(3, second.fileSize(find(second, "a/kept.txt")));
+        assertEquals(first.contentHash(find(first, "a/kept.txt")), second.contentHash(find(second, "a/kept.txt")));
+        assertEquals(13, second.fileSize(find(second, "b/listed.txt")));
+        assertTrue(find(second, "b/added.txt") >= 0);
+
+        // Without a previous snapshot everything is read as it is now
+        ProjectSnapshot fresh = scanner.scan(root);
+        assertEquals(18, fresh.fileSize(find(fresh, "a/kept.txt")));
+    }
+
+    @Test
+    void listsAFolderAgainWhenItsGitignoreChanged() throws IOException {
+        Files.writeString(root.resolve(".gitignore"), "# nothing yet\n");
+        Files.writeString(root.resolve("debug.log"), "log");
+        ParallelProjectScanner scanner = new ParallelProjectScanner();
+        ProjectSnapshot first = scanner.scan(root);
+        assertTrue(find(first, "debug.log") >= 0);
+
+        FileTime rootTime = Files.getLastModifiedTime(root);
+        Files.writeString(root.resolve(".gitignore"), "*.log\n");
+        touch(root.resolve(".gitignore"));
+        Files.setLastModifiedTime(root, rootTime);
+
+        assertEquals(-1, find(scanner.scan(root, first), "debug.log"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PathIndexTest {
+    @TempDir
+    Path root;
+
+    private PathIndex index(String... files) throws IOException {
+        for (String file : files) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, "");
+        }
+        return PathIndex.build(new ParallelProjectScanner().scan(root));
+    }
+
+    private static List<String> top(PathIndex index, PathIndex.Result result) {
+        List<String> paths = new ArrayList<>();
+        for (int id : result.top) {
+            paths.add(index.path(id));
+        }
+        return paths;
+    }
+
+    @Test
+    void ranksFileNameStartsFirst() throws IOException, InterruptedException {
+        PathIndex index = index("src/research/notes.txt", "src/main/SearchQuery.java", "docs/SeaChart.md");
+        List<String> ranked = top(index, index.search("search", null));
+        assertEquals(List.of("src/main/SearchQuery.java", "src/research/notes.txt"), ranked);
+        assertEquals("SearchQuery.java", index.fileName(index.search("search", null).top[0]));
+        assertEquals(root.resolve("src/main/SearchQuery.java"), index.resolve(index.search("search", null).top[0]));
+    }
+
+    // Capitals in the name are word starts, so the initials find the file
+    @Test
+    void matchesCamelHumpsAndIgnoresSpacesAndCase() throws IOException, InterruptedException {
+        PathIndex index = index("src/FileExplorer.java", "src/FlexibleEditor.java", "src/Fe.txt", "src/other.txt");
+        assertEquals("src/FileExplorer.java", top(index, index.search("FiEx", null)).get(0));
+        assertEquals(List.of("src/FileExplorer.java"), top(index, index.search("file expl", null)));
+        assertEquals(top(index, index.search("src\\fe", null)), top(index, index.search("SRC/FE", null)));
+        assertEquals(0, index.search("xyz", null).matches.length);
+    }
+
+    @Test
+    void narrowsFromThePreviousQuery() throws IOException, InterruptedException {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            files.add("module" + i % 7 + "/Part" + i + ".java");
+        }
+        PathIndex index = index(files.toArray(new String[0]));
+        assertEquals(300, index.size());
+
+        PathIndex.Result first = index.search("part1", null);
+        PathIndex.Result narrowed = index.search("part12", first);
+        PathIndex.Result fresh = index.search("part12", null);
+        assertArrayEquals(fresh.matches, narrowed.matches);
+        assertArrayEquals(fresh.top, narrowed.top);
+        assertTrue(narrowed.matches.length < first.matches.length);
+
+        // Not an extension of the previous query, so every path is checked again
+        assertEquals(fresh.matches.length, index.search("part12", index.search("zz", null)).matches.length);
+    }
+
+    @Test
+    void keepsOnlyTheBestResults() throws IOException, InterruptedException {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            files.add("deep/nested/folder/" + i + "/thing.txt");
+        }
+        files.add("Thing.java");
+        PathIndex index = index(files.toArray(new String[0]));
+        PathIndex.Result result = index.search("thing", null);
+        assertEquals(151, result.matches.length);
+        assertEquals(PathIndex.MAX_RESULTS, result.top.length);
+        assertEquals("Thing.java", index.path(result.top[0]));
+    }
+}
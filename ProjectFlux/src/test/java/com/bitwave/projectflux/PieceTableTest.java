@@ -0,0 +1,129 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PieceTableTest {
+    @TempDir
+    Path directory;
+
+    private Path file(String text) throws IOException {
+        Path file = directory.resolve("document.txt");
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private static String text(PieceTable table) {
+        return new String(table.read(0, table.length()), StandardCharsets.UTF_8);
+    }
+
+    // Every line, by lineStart and getLine, against the same text split with String methods
+    private static void assertLines(String expected, PieceTable table) {
+        String[] lines = expected.split("\n", -1);
+        assertEquals(lines.length, table.lineCount());
+        long offset = 0;
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(offset, table.lineStart(i), "start of line " + i);
+            assertEquals(lines[i].endsWith("\r") ? lines[i].substring(0, lines[i].length() - 1) : lines[i], table.getLine(i));
+            offset += lines[i].getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+    }
+
+    @Test
+    void insertsAndDeletesAcrossPieces() throws IOException {
+        try (PieceTable table = PieceTable.open(file("hello world"))) {
+            table.insert(5, ",");
+            table.insert(table.length(), "!");
+            table.insert(0, ">> ");
+            assertEquals(">> hello, world!", text(table));
+            table.delete(2, 8); // Spans an insert, the original and another insert
+            assertEquals(">>world!", text(table));
+            assertEquals(8, table.length());
+        }
+    }
+
+    @Test
+    void findsLinesInOriginalAndInsertedText() throws IOException {
+        try (PieceTable table = PieceTable.open(file("first\r\nsecond\nthird"))) {
+            assertLines("first\r\nsecond\nthird", table);
+            table.insert(table.lineStart(1), "new\nlines\n");
+            assertLines("first\r\nnew\nlines\nsecond\nthird", table);
+            table.replaceLine(0, "FIRST");
+            assertEquals("FIRST", table.getLine(0));
+            assertLines("FIRST\r\nnew\nlines\nsecond\nthird", table);
+        }
+    }
+
+    // Lines spread over many newline index chunks, edited at random against a StringBuilder
+    @Test
+    void matchesAStringUnderRandomEdits() throws IOException {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            expected.append("line ").append(i).append(" ".repeat(random.nextInt(20))).append('\n');
+        }
+        try (PieceTable table = PieceTable.open(file(expected.toString()))) {
+            for (int edit = 0; edit < 300; edit++) {
+                int offset = random.nextInt(expected.length() + 1);
+                if (random.nextBoolean()) {
+                    String inserted = random.nextInt(3) == 0 ? "\n" : "x" + edit + (random.nextBoolean() ? "\n" : "");
+                    table.insert(offset, inserted);
+                    expected.insert(offset, inserted);
+                } else {
+                    int length = Math.min(random.nextInt(200), expected.length() - offset);
+                    table.delete(offset, length);
+                    expected.delete(offset, offset + length);
+                }
+            }
+            assertEquals(expected.toString(), text(table));
+            assertLines(expected.toString(), table);
+        }
+    }
+
+    @Test
+    void savingOverItsOwnFileKeepsEditsMadeMeanwhile() throws IOException {
+        Path file = file("alpha\nbeta\ngamma\n");
+        try (PieceTable table = PieceTable.open(file)) {
+            table.replaceLine(1, "BETA");
+            PieceTable.Written written = table.snapshot().writeTemp(file);
+            table.insert(0, "later ");
+            table.delete(table.lineStart(2), 1);
+            table.commit(written);
+
+            assertEquals("alpha\nBETA\ngamma\n", Files.readString(file));
+            assertEquals("later alpha\nBETA\namma\n", text(table));
+            assertLines("later alpha\nBETA\namma\n", table);
+            assertTrue(table.isDirty());
+
+            table.writeTo(file);
+            assertEquals("later alpha\nBETA\namma\n", Files.readString(file));
+            assertFalse(table.isDirty());
+            try (var files = Files.list(directory)) {
+                assertEquals(1, files.count()); // No temp file left behind
+            }
+        }
+    }
+
+    @Test
+    void savingElsewhereLeavesTheOriginal() throws IOException {
+        Path file = file("one\ntwo\n");
+        Path copy = directory.resolve("copy.txt");
+        try (PieceTable table = PieceTable.open(file)) {
+            table.insert(table.length(), "three\n");
+            table.writeTo(copy);
+            assertEquals("one\ntwo\n", Files.readString(file));
+            assertEquals("one\ntwo\nthree\n", Files.readString(copy));
+            assertEquals("three", table.getLine(2));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearchQueryTest {
+    @Test
+    void takesPlainRunsOfThreeOrMore() {
+        assertEquals(List.of("foo", "barbaz"), SearchQuery.requiredLiterals("foo.*barbaz"));
+        assertEquals(List.of("abc"), SearchQuery.requiredLiterals("abcd?"));
+        assertEquals(List.of("abcd"), SearchQuery.requiredLiterals("abcd+"));
+        assertEquals(List.of("xyz"), SearchQuery.requiredLiterals("[a-z]+xyz"));
+        assertEquals(List.of("a.b"), SearchQuery.requiredLiterals("a\\.b"));
+    }
+
+    @Test
+    void dropsGroupsAndAlternation() {
+        assertEquals(List.of("tail"), SearchQuery.requiredLiterals("(head)?tail"));
+        assertEquals(List.of(), SearchQuery.requiredLiterals("(abc)*"));
+        assertEquals(List.of(), SearchQuery.requiredLiterals("foobar|bazqux"));
+    }
+
+    // The argument of an escape is not plain text, however long it is
+    @Test
+    void skipsWhatEscapesTake() {
+        assertEquals(List.of("bcd"), SearchQuery.requiredLiterals("\\x41bcd"));
+        assertEquals(List.of("bcd"), SearchQuery.requiredLiterals("\\x{41}bcd"));
+        assertEquals(List.of("bcdef"), SearchQuery.requiredLiterals("\\u0041bcdef"));
+        assertEquals(List.of("xyz"), SearchQuery.requiredLiterals("\\0101xyz"));
+        assertEquals(List.of("bcd"), SearchQuery.requiredLiterals("\\cAbcd"));
+        assertEquals(List.of("abcd"), SearchQuery.requiredLiterals("\\k<name>abcd"));
+        assertEquals(List.of("abcd"), SearchQuery.requiredLiterals("\\p{Lu}abcd"));
+        assertEquals(List.of("abcd"), SearchQuery.requiredLiterals("\\pLabcd"));
+        assertEquals(List.of("word"), SearchQuery.requiredLiterals("\\bword\\b"));
+    }
+
+    @Test
+    void takesQuotedTextAsPlain() {
+        assertEquals(List.of("a.b*cqq"), SearchQuery.requiredLiterals("\\Qa.b*c\\Eqq"));
+        assertEquals(List.of("a.b"), SearchQuery.requiredLiterals("\\Qa.b")); // Quoted to the end
+    }
+
+    @Test
+    void findsMatchesWithinALine() {
+        String content = "first line\nsecond Line\n";
+        SearchQuery literal = new SearchQuery("line", false, true);
+        assertEquals(6, literal.findFrom(content, 0));
+        assertEquals(-1, literal.findFrom(content, 7));
+        assertEquals(-1, literal.findInLine(content, 11, 22));
+
+        SearchQuery folded = new SearchQuery("LINE", false, false);
+        assertEquals(7, folded.findInLine(content, 11, 22));
+
+        SearchQuery anchored = new SearchQuery("^second", true, true);
+        assertEquals(11, anchored.findFrom(content, 0));
+        assertEquals(0, anchored.findInLine(content, 11, 22));
+    }
+
+    // Only the trigrams of the required literals, so a regex narrows by its plain text
+    @Test
+    void takesTrigramsFromRequiredLiterals() {
+        int[] trigrams = new SearchQuery("ab.*cde", true, true).trigrams();
+        assertEquals(1, trigrams.length);
+        assertEquals(TrigramIndex.trigram((byte) 'c', (byte) 'd', (byte) 'e'), trigrams[0]);
+        assertEquals(0, new SearchQuery("a|bcdef", true, true).trigrams().length);
+        assertEquals(3, new SearchQuery("Hello", false, false).trigrams().length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.bitwave.projectflux;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrigramIndexTest {
+    @TempDir
+    Path root;
+
+    private TrigramIndex index() throws IOException, InterruptedException {
+        Files.createDirectories(root.resolve("src"));
+        Files.writeString(root.resolve("src/Alpha.java"), "class Alpha {\n    int counter;\n}\n");
+        Files.writeString(root.resolve("src/Beta.java"), "class Beta {\n    String name;\n    int Counter;\n}\n");
+        Files.writeString(root.resolve("notes.txt"), "nothing to see\n");
+        return TrigramIndex.build(new ParallelProjectScanner().scan(root));
+    }
+
+    private static Set<Path> candidates(TrigramIndex index, SearchQuery query) {
+        return new HashSet<>(index.candidates(query.trigrams()));
+    }
+
+    private static List<TrigramIndex.Hit> search(TrigramIndex index, SearchQuery query, Map<Path, String> unsaved)
+            throws InterruptedException {
+        List<TrigramIndex.Hit> hits = Collections.synchronizedList(new ArrayList<>());
+        index.search(query, unsaved, hits::add, new AtomicBoolean());
+        hits.sort((a, b) -> a.file.compareTo(b.file));
+        return hits;
+    }
+
+    @Test
+    void narrowsToFilesHoldingEveryTrigram() throws IOException, InterruptedException {
+        TrigramIndex index = index();
+        assertEquals(3, index.fileCount());
+        assertEquals(Set.of(root.resolve("src/Alpha.java"), root.resolve("src/Beta.java")),
+                candidates(index, new SearchQuery("counter", false, false)));
+        assertEquals(Set.of(root.resolve("src/Beta.java")), candidates(index, new SearchQuery("String", false, true)));
+        assertEquals(Set.of(), candidates(index, new SearchQuery("missing", false, false)));
+        // Nothing to narrow by, so every file is read
+        assertEquals(3, candidates(index, new SearchQuery("a.", true, false)).size());
+    }
+
+    // Trigrams only narrow; the query itself decides, so case is matched as asked
+    @Test
+    void findsLinesInCandidates() throws IOException, InterruptedException {
+        TrigramIndex index = index();
+        List<TrigramIndex.Hit> hits = search(index, new SearchQuery("Counter", false, true), Map.of());
+        assertEquals(1, hits.size());
+        assertEquals(root.resolve("src/Beta.java"), hits.get(0).file);
+        assertEquals(3, hits.get(0).line);
+        assertEquals(8, hits.get(0).column);
+        assertEquals("    int Counter;", hits.get(0).text);
+
+        assertEquals(2, search(index, new SearchQuery("counter", false, false), Map.of()).size());
+        assertEquals(2, search(index, new SearchQuery("int \\w+ter;", true, false), Map.of()).size());
+    }
+
+    @Test
+    void followsUpdatesAndRemovals() throws IOException, InterruptedException {
+        TrigramIndex index = index();
+        Path notes = root.resolve("notes.txt");
+        Files.writeString(notes, "a counter here too\n");
+        index.update(notes);
+        assertEquals(3, candidates(index, new SearchQuery("counter", false, false)).size());
+
+        index.remove(root.resolve("src/Alpha.java"));
+        assertEquals(2, index.fileCount());
+        assertEquals(Set.of(root.resolve("src/Beta.java"), notes), candidates(index, new SearchQuery("counter", false, false)));
+
+        Path added = root.resolve("src/Gamma.java");
+        Files.writeString(added, "class Gamma {}\n");
+        index.update(added);
+        assertEquals(Set.of(added), candidates(index, new SearchQuery("Gamma", false, true)));
+        index.update(root.getParent().resolve("elsewhere.txt")); // Outside the project
+        assertEquals(3, index.fileCount());
+    }
+
+    // An open file is searched in its unsaved text even if the index does not list it
+    @Test
+    void searchesUnsavedText() throws IOException, InterruptedException {
+        TrigramIndex index = index();
+        Path notes = DocumentRegistry.key(root.resolve("notes.txt"));
+        List<TrigramIndex.Hit> hits = search(index, new SearchQuery("counter", false, true),
+                Map.of(notes, "first\nunsaved counter\n"));
+        assertEquals(2, hits.size());
+        assertTrue(hits.stream().anyMatch(hit -> hit.line == 2 && hit.text.equals("unsaved counter")));
+    }
+}